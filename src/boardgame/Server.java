@@ -55,6 +55,7 @@ public class Server implements Runnable {
     private static final int FIRST_MOVE_TIMEOUT_CUSHION = 1000;
 
     protected static final String DEFAULT_BOARDCLASS = "pentago_twist.PentagoBoard";
+    protected static final String RULES_PROPERTY = "pentago.rules"; // Read by the board class, see PentagoBoard()
 
     protected static final boolean DBGNET = false;
     protected static final boolean DUMPBOARD = false;
@@ -111,12 +112,14 @@ public class Server implements Runnable {
     private boolean playingHistory = false;
 
     private static void printUsage() {
-        System.err.println("\nUsage: java boardgame.Server [-p port] [-ng] [-q] [-t n] [-b class]\n"
+        System.err.println("\nUsage: java boardgame.Server [-p port] [-ng] [-q] [-t n] [-r rules] [-b class]\n"
                 + "  Where '-p port' sets the port to listen on. (default=" + DEFAULT_PORT + ")\n"
                 + "        '-ng' indicates not to show a GUI.\n"
                 + "        '-q' indicates not to dump log to console.\n" + "        '-t n' sets timeout. (default="
                 + DEFAULT_TIMEOUT + ")\n" + "        '-ft n' sets timeout for the first move. (default="
-                + FIRST_MOVE_TIMEOUT + ")\n" + "        '-k' indicates to start a new server once a game is running"
+                + FIRST_MOVE_TIMEOUT + ")\n" + "        '-k' indicates to start a new server once a game is running\n"
+                + "        '-r rules' selects the Pentago rules, twist or swap. (default=twist)\n"
+                + "                   Clients must be started with -D" + RULES_PROPERTY + "=<rules> to match.\n"
                 + "  e.g.\n" + "    java boardgame.Server -p " + DEFAULT_PORT + " -t " + DEFAULT_TIMEOUT + "\n"
                 + "  launches a server with a GUI and the default parameters.\n");
     }
@@ -143,6 +146,8 @@ public class Server implements Runnable {
                     argKeep = true;
                 else if (args[i].equals("-l"))
                     log_dir = args[++i];
+                else if (args[i].equals("-r"))
+                    System.setProperty(RULES_PROPERTY, args[++i]);
                 else {
                     printUsage();
                     return;
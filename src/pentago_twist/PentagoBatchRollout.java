@@ -0,0 +1,98 @@
+package pentago_twist;
+
+import boardgame.Board;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays many independent random games from the same position in lockstep. Each game is a lane in parallel
+ * primitive arrays, and every ply advances all unfinished lanes with the same straight-line mask arithmetic as
+ * PentagoBoardState, so the inner loop has no objects, virtual calls or allocation for the JIT to trip over.
+ * All lanes have played the same number of plies, so the turn player and turn number are shared scalars.
+ *
+ * An instance holds its lane arrays and is not thread-safe; keep one per thread.
+ * @author Samuel Morris (dodobird)
+ */
+public class PentagoBatchRollout {
+    private final long[] white;
+    private final long[] black;
+    private final int[] winner;
+
+    public PentagoBatchRollout(int capacity) {
+        white = new long[capacity];
+        black = new long[capacity];
+        winner = new int[capacity];
+    }
+
+    public int getCapacity() { return winner.length; }
+
+    /**
+     * Plays numGames uniformly random games from the given state, stopping each one as soon as
+     * PentagoBoardState.gameOver() would, and drawing moves from the state's random source.
+     * @return the number of games won by the given player
+     */
+    public int run(PentagoBoardState start, int numGames, int player) {
+        if (numGames > winner.length) {
+            throw new IllegalArgumentException("Batch of " + numGames + " games exceeds capacity " + winner.length);
+        }
+        if (start.gameOver()) {
+            for (int i = 0; i < numGames; i++) {
+                winner[i] = start.getWinner();
+            }
+            return countWins(numGames, player);
+        }
+        long startWhite = start.getPlayerMask(PentagoBoardState.WHITE);
+        long startBlack = start.getPlayerMask(PentagoBoardState.BLACK);
+        for (int i = 0; i < numGames; i++) {
+            white[i] = startWhite;
+            black[i] = startBlack;
+            winner[i] = Board.NOBODY;
+        }
+
+        SplittableRandom random = start.getRandom();
+        PentagoBoardState.Rules rules = start.getRules();
+        int numTwists = rules.numTwists;
+        int turnPlayer = start.getTurnPlayer();
+        int turnNumber = start.getTurnNumber();
+        int running = numGames;
+        while (running > 0 && !(turnNumber >= PentagoBoardState.MAX_TURNS - 1 && turnPlayer == PentagoBoardState.BLACK)) {
+            for (int i = 0; i < numGames; i++) {
+                if (winner[i] != Board.NOBODY) { continue; }
+                long w = white[i];
+                long b = black[i];
+                long empty = ~(w | b) & PentagoBoardState.FULL_BOARD;
+                int draw = random.nextInt(Long.bitCount(empty) * numTwists);
+                long placed = 1L << PentagoBoardState.selectBit(empty, draw / numTwists);
+                int twist = draw % numTwists;
+                if (turnPlayer == PentagoBoardState.WHITE) { w |= placed; } else { b |= placed; }
+                w = PentagoBoardState.applyTwist(rules, w, twist);
+                b = PentagoBoardState.applyTwist(rules, b, twist);
+                white[i] = w;
+                black[i] = b;
+
+                boolean whiteWin = PentagoBoardState.hasLine(w);
+                boolean blackWin = PentagoBoardState.hasLine(b);
+                if (whiteWin || blackWin) {
+                    winner[i] = whiteWin && blackWin ? Board.DRAW : (whiteWin ? PentagoBoardState.WHITE : PentagoBoardState.BLACK);
+                    running--;
+                }
+            }
+            if (turnPlayer != start.firstPlayer()) { turnNumber += 1; }
+            turnPlayer = 1 - turnPlayer;
+        }
+
+        return countWins(numGames, player);
+    }
+
+    /**
+     * @return the number of the first numGames games of the last run won by the given player, so both players'
+     * results can be read without replaying the batch.
+     */
+    public int countWins(int numGames, int player) {
+        int wins = 0;
+        for (int i = 0; i < numGames; i++) {
+            if (winner[i] == player) { wins++; }
+        }
+        return wins;
+    }
+}
@@ -11,9 +11,17 @@ import boardgame.Move;
 public class PentagoBoard extends Board {
     private PentagoBoardState boardState;
 
+    /**
+     * Creates a board with the rules named by the PentagoBoardState.RULES_PROPERTY system property, Twist by default.
+     * The server and the clients construct their boards this way, so they all need the same setting.
+     */
     public PentagoBoard() {
+        this(PentagoBoardState.Rules.fromSystemProperty());
+    }
+
+    public PentagoBoard(PentagoBoardState.Rules rules) {
         super();
-        boardState = new PentagoBoardState();
+        boardState = new PentagoBoardState(rules);
     }
 
     @Override
@@ -63,7 +71,7 @@ public class PentagoBoard extends Board {
 
     @Override
     public Object clone() {
-        PentagoBoard board = new PentagoBoard();
+        PentagoBoard board = new PentagoBoard(boardState.getRules());
         board.boardState = (PentagoBoardState) boardState.clone();
         return board;
     }
@@ -209,7 +209,6 @@ public class PentagoBoardPanel extends BoardPanel implements MouseListener, Mous
         if (pbs.isPlaceLegal(dest)) {
             isPieceSelected = true;
             pieceSelection = new PentagoCoord(dest.getX(), dest.getY());
-            pbs.getBoard()[dest.getX()][dest.getY()] = pbs.getTurnPlayer() == PentagoBoardState.WHITE ? Piece.WHITE : Piece.BLACK;
             humanRepaint();
             System.out.println("PIECE PLACED");
         }
@@ -266,6 +265,12 @@ public class PentagoBoardPanel extends BoardPanel implements MouseListener, Mous
                 }
             }
         }
+        if (isPieceSelected && pieceSelection != null) { // Show the piece being placed before the move is sent
+            Piece p = pbs.getTurnPlayer() == PentagoBoardState.WHITE ? Piece.WHITE : Piece.BLACK;
+            int xPos = pieceSelection.getY() * SQUARE_SIZE + SQUARE_SIZE / 2;
+            int yPos = pieceSelection.getX() * SQUARE_SIZE + SQUARE_SIZE / 2;
+            boardPieces.add(new GUIPiece(p, xPos, yPos, pieceSelection));
+        }
     }
 
     // Helpers.
@@ -4,8 +4,9 @@ import boardgame.BoardState;
 import boardgame.Move;
 
 import java.util.ArrayList;
-import java.util.function.UnaryOperator;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 import java.util.Scanner;
 
@@ -14,13 +15,16 @@ import java.util.Scanner;
  * Note: First player white, second player black!!
  * @author mgrenander
  */
-public class PentagoBoardState extends BoardState {
+public class PentagoBoardState extends BoardState implements PentagoSearchState {
     public static final int BOARD_SIZE = 6;
     private static final int QUAD_SIZE = 3;
     private static final int NUM_QUADS = 4;
     public static final int WHITE = 0;
     public static final int BLACK = 1;
     public static final int MAX_TURNS = 18;
+    public static final int NUM_TWISTS = 4 * 2; // Rotate or flip any quadrant; the low 3 bits of an encoded move
+    public static final String RULES_PROPERTY = "pentago.rules"; // System property naming the default Rules
+    public static final int MAX_MOVES = BOARD_SIZE * BOARD_SIZE * NUM_TWISTS; // Upper bound on the number of legal moves
     private static final int ILLEGAL = -1;
     public enum Piece {
         BLACK, WHITE, EMPTY;
@@ -30,37 +34,85 @@ public class PentagoBoardState extends BoardState {
         }
     }
 
-    private static final UnaryOperator<PentagoCoord> getNextHorizontal = c -> new PentagoCoord(c.getX(), c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextVertical = c -> new PentagoCoord(c.getX()+1, c.getY());
-    private static final UnaryOperator<PentagoCoord> getNextDiagRight = c -> new PentagoCoord(c.getX()+1, c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextDiagLeft = c -> new PentagoCoord(c.getX()+1, c.getY()-1);
+    /**
+     * What happens to the quadrants after a piece is placed. Under TWIST a move rotates 90 degrees clockwise
+     * (bSwap 0) or flips left-to-right (bSwap 1) quadrant aSwap. Under SWAP, the original rule, a move exchanges
+     * quadrants aSwap and bSwap. Either way the low 3 bits of an encoded move select one of numTwists operations.
+     */
+    public enum Rules {
+        TWIST(NUM_TWISTS), SWAP(6);
+
+        public final int numTwists;
+
+        Rules(int numTwists) { this.numTwists = numTwists; }
+
+        /**
+         * @return the rules named by the RULES_PROPERTY system property, or TWIST if it is not set.
+         */
+        public static Rules fromSystemProperty() {
+            return valueOf(System.getProperty(RULES_PROPERTY, TWIST.name()).toUpperCase());
+        }
+    }
+
+    private static final int WIN_LENGTH = 5;
+    private static final int[][] LINE_DIRECTIONS = { {0, 1}, {1, 0}, {1, 1}, {1, -1} }; // horizontal, vertical, diag right, diag left
+    private static final long[] WIN_LINES = buildWinLines(); // Mask of every 5-in-a-row line on the board
+    static final long FULL_BOARD = (1L << (BOARD_SIZE * BOARD_SIZE)) - 1;
+    private static final int QUAD_CELLS = QUAD_SIZE * QUAD_SIZE;
+    private static final int ROW_BITS = (1 << QUAD_SIZE) - 1;
+    private static final int[] QUAD_OFFSET = buildQuadOffsets(); // Bit index of the top-left cell of each quadrant
+    private static final long[] QUAD_MASKS = buildQuadMasks();
+    private static final int[][] TWIST_TABLE = buildTwistTable(); // [op][9-bit quadrant] -> twisted 9-bit quadrant
+    private static final int[][] UNTWIST_TABLE = buildUntwistTable(); // Inverse of TWIST_TABLE, used by undoMove
+    private static final long ZOBRIST_SEED = 424L;
+    private static final long[][] CELL_ZOBRIST = buildCellZobrist(); // [player][bit] -> random key
+    private static final long[][][] QUAD_ZOBRIST = buildQuadZobrist(); // [player][quad][9-bit quadrant] -> xor of its cell keys
+    private static final int[] REVERSE_QUAD = buildReverseQuad(); // 9-bit quadrant turned 180 degrees
+    private static final int[][] SWAP_PAIRS = { {0, 1}, {0, 2}, {0, 3}, {1, 2}, {1, 3}, {2, 3} }; // [twist] -> quadrants
+    private static final int[][] SWAP_TWISTS = buildSwapTwists(); // [quad][quad] -> twist swapping them, or ILLEGAL
+    public static final int NUM_LINES = WIN_LINES.length;
+    private static final int[][] CELL_LINES = buildCellLines(); // [bit] -> indices of the lines through that square
+    private static final int[][] QUAD_LINES = buildQuadLines(); // [quad] -> indices of the lines crossing that quadrant
+    private static final long NIBBLE_ONES = 0x1111111111111111L;
+    private static final long NIBBLE_HIGHS = 0x8888888888888888L;
+    public static final int NUM_SYMMETRIES = 2; // Identity and the half turn, see transformMask
+    private static final ThreadLocal<SplittableRandom> THREAD_RANDOM = ThreadLocal.withInitial(SplittableRandom::new);
     private static int FIRST_PLAYER = 0;
 
-    private Piece[][] board;
-    private Piece[][][] quadrants;
+    private final Rules rules;
+    private final int numTwists;
+    // Bit (x * BOARD_SIZE + y) of a mask is set when the corresponding player has a piece at (x, y).
+    private long whiteMask;
+    private long blackMask;
+    private long hash; // Zobrist key of the two masks, kept up to date by processMove and undoMove
+    private long turnedHash; // Zobrist key of the board turned 180 degrees, kept up to date alongside hash
+    // Piece count of each player in each line, one 4-bit count per line: lines 0-15 in Lo, 16-31 in Hi
+    private long whiteLinesLo;
+    private long whiteLinesHi;
+    private long blackLinesLo;
+    private long blackLinesHi;
     private int turnPlayer;
     private int turnNumber;
     private int winner;
-    private Random rand;
+    private SplittableRandom rand; // Caller-supplied random source, or null to use the calling thread's own stream
+    private int[] winnerHistory; // Winner before each processed move, allocated on first use
+    private long[] twistedScratch; // Both players' masks under each twist for getDistinctMoves, allocated on first use
+    private int historySize;
 
     public PentagoBoardState() {
+        this(Rules.TWIST);
+    }
+
+    public PentagoBoardState(Rules rules) {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                this.board[i][j] = Piece.EMPTY;
-            }
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                for (int k = 0; k < QUAD_SIZE; k++) {
-                    this.quadrants[i][j][k] = Piece.EMPTY;
-                }
-            }
-        }
+        this.rules = rules;
+        this.numTwists = rules.numTwists;
+        whiteMask = 0L;
+        blackMask = 0L;
+        hash = 0L;
+        turnedHash = 0L;
 
-        rand = new Random();
+        rand = null;
         winner = Board.NOBODY;
         turnPlayer = FIRST_PLAYER;
         turnNumber = 0;
@@ -69,30 +121,187 @@ public class PentagoBoardState extends BoardState {
     // For cloning
     private PentagoBoardState(PentagoBoardState pbs) {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            System.arraycopy(pbs.board[i], 0, this.board[i], 0, BOARD_SIZE);
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                System.arraycopy(pbs.quadrants[i][j], 0, this.quadrants[i][j], 0, QUAD_SIZE);
-            }
-        }
+        this.rules = pbs.rules;
+        this.numTwists = pbs.numTwists;
+        this.whiteMask = pbs.whiteMask;
+        this.blackMask = pbs.blackMask;
+        this.hash = pbs.hash;
+        this.turnedHash = pbs.turnedHash;
+        this.whiteLinesLo = pbs.whiteLinesLo;
+        this.whiteLinesHi = pbs.whiteLinesHi;
+        this.blackLinesLo = pbs.blackLinesLo;
+        this.blackLinesHi = pbs.blackLinesHi;
 
-        rand = new Random(2019);
+        this.rand = pbs.rand;
         this.winner = pbs.winner;
         this.turnPlayer = pbs.turnPlayer;
         this.turnNumber = pbs.turnNumber;
     }
 
-    public Piece[][] getBoard() { return this.board; }
+    // For restoring a snapshot
+    PentagoBoardState(Rules rules, long whiteMask, long blackMask, int turnPlayer, int turnNumber, int winner) {
+        super();
+        this.rules = rules;
+        this.numTwists = rules.numTwists;
+        this.whiteMask = whiteMask;
+        this.blackMask = blackMask;
+        this.hash = computeHash(whiteMask, blackMask);
+        this.turnedHash = computeHash(transformMask(whiteMask, 1), transformMask(blackMask, 1));
+        for (int q = 0; q < NUM_QUADS; q++) {
+            recountLines(QUAD_LINES[q]); // Every line crosses some quadrant
+        }
+
+        this.rand = null;
+        this.winner = winner;
+        this.turnPlayer = turnPlayer;
+        this.turnNumber = turnNumber;
+    }
+
+    /**
+     * @return an immutable compact copy of this position with value equality, usable as a map key.
+     */
+    public PentagoSnapshot snapshot() {
+        return new PentagoSnapshot(rules, whiteMask, blackMask, turnPlayer, turnNumber, winner);
+    }
+
+    /**
+     * Builds a Piece[][] view of the board. The returned array is a copy, so writing to it does not modify the state.
+     */
+    public Piece[][] getBoard() {
+        Piece[][] board = new Piece[BOARD_SIZE][BOARD_SIZE];
+        for (int i = 0; i < BOARD_SIZE; i++) {
+            for (int j = 0; j < BOARD_SIZE; j++) {
+                board[i][j] = pieceAt(bitIndex(i, j));
+            }
+        }
+        return board;
+    }
+
+    public Rules getRules() { return rules; }
+
+    /**
+     * @return the number of operations selectable by the low 3 bits of an encoded move under this state's rules.
+     */
+    public int getNumTwists() { return numTwists; }
+
+    /**
+     * @return the occupancy mask of the given player, bit (x * BOARD_SIZE + y) being set for a piece at (x, y).
+     */
+    public long getPlayerMask(int player) { return player == WHITE ? whiteMask : blackMask; }
+
+    /**
+     * @return the mask of all occupied squares.
+     */
+    public long getOccupiedMask() { return whiteMask | blackMask; }
+
+    /**
+     * @return the 64-bit Zobrist key of the pieces on the board. The turn player and turn number follow from the
+     * number of pieces, so equal boards reached by legal play have equal keys.
+     */
+    public long getHash() { return hash; }
+
+    /**
+     * Computes from scratch the Zobrist key that getHash() maintains incrementally.
+     */
+    public static long computeHash(long whiteMask, long blackMask) {
+        long key = 0L;
+        for (int bit = 0; bit < BOARD_SIZE * BOARD_SIZE; bit++) {
+            if ((whiteMask >>> bit & 1L) != 0) { key ^= CELL_ZOBRIST[WHITE][bit]; }
+            if ((blackMask >>> bit & 1L) != 0) { key ^= CELL_ZOBRIST[BLACK][bit]; }
+        }
+        return key;
+    }
+
+    /**
+     * Maps a mask through a board symmetry that the Twist rules preserve. Of the 8 symmetries of the square, only
+     * the identity (0) and the half turn (1) do: a quarter turn sends a left-right flip to an up-down flip, and a
+     * mirror sends a clockwise rotation to a counter-clockwise one, neither of which is a legal move. The half turn
+     * maps win lines to win lines, quadrant q to 3 - q, and each rotate/flip to the same operation. The Swap rules
+     * preserve all 8, but only these two are used for both rule sets.
+     */
+    public static long transformMask(long mask, int symmetry) {
+        return symmetry == 0 ? mask : Long.reverse(mask) >>> (64 - BOARD_SIZE * BOARD_SIZE);
+    }
+
+    /**
+     * Maps an encoded move through a symmetry, see transformMask. Playing the transformed move on the transformed
+     * position gives the transformed successor.
+     */
+    public static int transformMove(int move, int symmetry) {
+        return transformMove(Rules.TWIST, move, symmetry);
+    }
+
+    /**
+     * Maps an encoded move of the given rules through a symmetry, see transformMove(int, int).
+     */
+    public static int transformMove(Rules rules, int move, int symmetry) {
+        if (symmetry == 0) { return move; }
+        int square = BOARD_SIZE * BOARD_SIZE - 1 - (move >>> 3);
+        if (rules == Rules.SWAP) {
+            int[] pair = SWAP_PAIRS[move & 7];
+            return square << 3 | SWAP_TWISTS[NUM_QUADS - 1 - pair[0]][NUM_QUADS - 1 - pair[1]];
+        }
+        return square << 3 | (3 - moveQuad(move)) << 1 | moveOp(move);
+    }
+
+    /**
+     * @return the symmetry that maps this position to its canonical form, the image with the smallest
+     * (white mask, black mask). Apply transformMove with it to moves of this position to get canonical moves.
+     */
+    public int getCanonicalSymmetry() {
+        long turnedWhite = transformMask(whiteMask, 1);
+        if (turnedWhite != whiteMask) { return turnedWhite < whiteMask ? 1 : 0; }
+        return transformMask(blackMask, 1) < blackMask ? 1 : 0;
+    }
+
+    /**
+     * @return the Zobrist key of the canonical form of this position, equal for all positions related by a
+     * symmetry the rules preserve. Maintained incrementally like getHash().
+     */
+    public long getCanonicalHash() { return getCanonicalSymmetry() == 0 ? hash : turnedHash; }
+
+    /**
+     * @return the mask of the squares of a 5-in-a-row line, for a line index in [0, NUM_LINES).
+     */
+    public static long getLineMask(int line) { return WIN_LINES[line]; }
+
+    /**
+     * @return the number of the player's pieces in the given line, read from the summary that processMove and
+     * undoMove keep up to date for the lines they touch.
+     */
+    public int getLineCount(int player, int line) {
+        long counts = player == WHITE ? (line < 16 ? whiteLinesLo : whiteLinesHi) : (line < 16 ? blackLinesLo : blackLinesHi);
+        return (int) (counts >>> ((line & 15) << 2)) & 0xF;
+    }
+
+    /**
+     * @return true if the line can still be completed by someone, i.e. it does not hold pieces of both players.
+     * Twists move pieces in and out of lines, so a closed line may reopen later.
+     */
+    public boolean isLineOpen(int line) {
+        return getLineCount(WHITE, line) == 0 || getLineCount(BLACK, line) == 0;
+    }
+
+    /**
+     * @return true if the line holds no piece of the player's opponent.
+     */
+    public boolean isLineOpenFor(int player, int line) {
+        return getLineCount(1 - player, line) == 0;
+    }
 
     @Override
     public Object clone() {
         return new PentagoBoardState(this);
     }
 
+    @Override
+    public PentagoSearchState copy() {
+        return new PentagoBoardState(this);
+    }
+
+    @Override
+    public int getMaxMoves() { return MAX_MOVES; }
+
     @Override
     public int getWinner() { return winner; }
 
@@ -106,42 +315,87 @@ public class PentagoBoardState extends BoardState {
     public int getTurnNumber() { return turnNumber; }
 
     @Override
-    public boolean isInitialized() { return board != null; }
+    public boolean isInitialized() { return true; }
 
     @Override
     public int firstPlayer() { return FIRST_PLAYER; }
 
+    /**
+     * Sets the random source used by getRandomMove() and rollouts on this state. Clones share it, so a seeded
+     * source (e.g. one split per search thread) makes playouts reproducible. Pass null to fall back to the calling
+     * thread's default stream. A SplittableRandom is not thread-safe, so don't share one across threads.
+     */
+    public void setRandom(SplittableRandom rand) { this.rand = rand; }
+
+    /**
+     * @return the random source of this state, which is the calling thread's default stream unless one was set.
+     */
+    public SplittableRandom getRandom() { return rand != null ? rand : THREAD_RANDOM.get(); }
+
     @Override
     public Move getRandomMove() {
-        ArrayList<PentagoMove> moves = getAllLegalMoves();
-        return moves.get(rand.nextInt(moves.size()));
+        return toMove(getRandomEncodedMove());
+    }
+
+    /**
+     * Draws a uniformly random legal move without building the move list: a single draw picks the n-th empty
+     * square and the twist, since every empty square has the same numTwists moves.
+     * @return the encoded move, see getAllLegalMoves(int[])
+     */
+    public int getRandomEncodedMove() {
+        long empty = ~(whiteMask | blackMask) & FULL_BOARD;
+        int draw = getRandom().nextInt(Long.bitCount(empty) * numTwists);
+        return selectBit(empty, draw / numTwists) << 3 | draw % numTwists;
+    }
+
+    /**
+     * @return the index of the n-th (from 0) set bit of the mask, which must have more than n bits set.
+     */
+    static int selectBit(long mask, int n) {
+        int base = 0;
+        int count = Long.bitCount(mask & 0xFFFFL);
+        while (n >= count) { // Skip 16 bits at a time
+            n -= count;
+            mask >>>= 16;
+            base += 16;
+            count = Long.bitCount(mask & 0xFFFFL);
+        }
+        for (; n > 0; n--) {
+            mask &= mask - 1;
+        }
+        return base + Long.numberOfTrailingZeros(mask);
     }
 
     public Piece getPieceAt(int xPos, int yPos) {
         if (xPos < 0 || xPos >= BOARD_SIZE || yPos < 0 || yPos >= BOARD_SIZE) {
             throw new IllegalArgumentException("Out of range");
         }
-        return board[xPos][yPos];
+        return pieceAt(bitIndex(xPos, yPos));
     }
 
     public Piece getPieceAt(PentagoCoord coord) {
         return getPieceAt(coord.getX(), coord.getY());
     }
 
+    private Piece pieceAt(int bit) {
+        if ((whiteMask >>> bit & 1L) != 0) { return Piece.WHITE; }
+        if ((blackMask >>> bit & 1L) != 0) { return Piece.BLACK; }
+        return Piece.EMPTY;
+    }
+
+    private boolean isEmptyAt(int x, int y) {
+        return ((whiteMask | blackMask) >>> bitIndex(x, y) & 1L) == 0;
+    }
+
+    private static int bitIndex(int x, int y) { return x * BOARD_SIZE + y; }
+
     public ArrayList<PentagoMove> getAllLegalMoves() {
         ArrayList<PentagoMove> legalMoves = new ArrayList<>();
         for (int i = 0; i < BOARD_SIZE; i++) { //Iterate through positions on board
             for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == Piece.EMPTY) {
-//                    for (int k = 0; k < NUM_QUADS - 1; k++) { // Iterate through valid swaps
-//                        for (int l = k+1; l < NUM_QUADS; l++) {
-//                            legalMoves.add(new PentagoMove(i, j, k, l, turnPlayer));
-//                        }
-//                    }
-                    for (int k = 0; k < NUM_QUADS; k++) { // Iterate through valid moves for rotate/flip
-                        for (int l = 0; l < 2; l++) {
-                            legalMoves.add(new PentagoMove(i, j, k, l, turnPlayer));
-                        }
+                if (isEmptyAt(i, j)) {
+                    for (int twist = 0; twist < numTwists; twist++) { // Iterate through valid swaps or rotate/flips
+                        legalMoves.add(toMove(bitIndex(i, j) << 3 | twist));
                     }
                 }
             }
@@ -149,18 +403,213 @@ public class PentagoBoardState extends BoardState {
         return legalMoves;
     }
 
-    public boolean isLegal(PentagoMove m) {
-        // for swap
-        //if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= NUM_QUADS) { return false; }
-        //if (m.getASwap() == m.getBSwap()) { return false; } // Cannot swap same tile
+    /**
+     * Allocation-free counterpart of getAllLegalMoves(): fills the caller-owned buffer with the encoded legal moves,
+     * in the same order, and returns how many were written. The buffer needs room for MAX_MOVES entries.
+     * Encoded moves are applied with processMove(int) and decoded with the moveX/moveY/moveQuad/moveOp helpers.
+     */
+    public int getAllLegalMoves(int[] moves) {
+        long empty = ~(whiteMask | blackMask) & FULL_BOARD;
+        int count = 0;
+        while (empty != 0) {
+            int first = Long.numberOfTrailingZeros(empty) << 3;
+            for (int k = 0; k < numTwists; k++) {
+                moves[count++] = first | k;
+            }
+            empty &= empty - 1;
+        }
+        return count;
+    }
 
-        // update for rotate90 and flip
-        if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= 2) { return false; }
+    /**
+     * Like getAllLegalMoves(int[]), but keeps only one move per distinct successor position: twisting an empty or
+     * symmetric quadrant, or twisting different quadrants that end up the same, gives identical positions.
+     * The kept move of each group is the one with the smallest code, so the output stays in standard order.
+     * @param moves receives the representative encoded moves; needs room for MAX_MOVES entries
+     * @param representatives if not null, receives at index m the representative of every legal encoded move m
+     *                        (MAX_MOVES entries); other entries are left untouched
+     * @return the number of distinct moves written
+     */
+    public int getDistinctMoves(int[] moves, int[] representatives) {
+        long mine = getPlayerMask(turnPlayer);
+        long theirs = getPlayerMask(1 - turnPlayer);
+        if (twistedScratch == null) {
+            twistedScratch = new long[2 * NUM_TWISTS];
+        }
+        long[] twisted = twistedScratch; // Our pieces under twist t at t, the opponent's at NUM_TWISTS + t
+        for (int twist = 0; twist < numTwists; twist++) {
+            twisted[twist] = applyTwist(rules, mine, twist);
+            twisted[NUM_TWISTS + twist] = applyTwist(rules, theirs, twist);
+        }
+        long empty = ~(whiteMask | blackMask) & FULL_BOARD;
+        int count = 0;
+        while (empty != 0) {
+            int square = Long.numberOfTrailingZeros(empty);
+            for (int twist = 0; twist < numTwists; twist++) {
+                int move = square << 3 | twist;
+                long result = twisted[twist] | applyTwist(rules, 1L << square, twist);
+                int representative = move;
+                for (int other = 0; other < numTwists; other++) {
+                    // (square', other) gives the same position iff the opponent pieces match and our pieces differ
+                    // by the one placed square; that square is empty since it is in neither twisted mask
+                    if (other == twist || twisted[NUM_TWISTS + other] != twisted[NUM_TWISTS + twist]) { continue; }
+                    long added = result & ~twisted[other];
+                    if ((twisted[other] & ~result) != 0 || added == 0 || (added & (added - 1)) != 0) { continue; }
+                    int otherSquare = Long.numberOfTrailingZeros(revertTwist(rules, added, other));
+                    representative = Math.min(representative, otherSquare << 3 | other);
+                }
+                if (representative == move) { moves[count++] = move; }
+                if (representatives != null) { representatives[move] = representative; }
+            }
+            empty &= empty - 1;
+        }
+        return count;
+    }
 
-        PentagoCoord c = m.getMoveCoord();
-        if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
+    /**
+     * Encodes a move for the turn player as (x * BOARD_SIZE + y) * 8 + quad * 2 + op, in [0, MAX_MOVES).
+     */
+    public static int encodeMove(int x, int y, int quad, int op) { return bitIndex(x, y) << 3 | quad << 1 | op; }
+
+    /**
+     * Encodes a Swap move exchanging quadrants quadA and quadB, in either order, as (x * BOARD_SIZE + y) * 8 + pair,
+     * the pair being the index of {min, max} among {0, 1}, {0, 2}, {0, 3}, {1, 2}, {1, 3}, {2, 3}.
+     * @return the encoded move, or -1 if the quadrants are out of range or equal
+     */
+    public static int encodeSwapMove(int x, int y, int quadA, int quadB) {
+        if (quadA < 0 || quadA >= NUM_QUADS || quadB < 0 || quadB >= NUM_QUADS || quadA == quadB) { return ILLEGAL; }
+        return bitIndex(x, y) << 3 | SWAP_TWISTS[quadA][quadB];
+    }
+
+    /**
+     * @return the two quadrants exchanged by an encoded Swap move, smallest first.
+     */
+    public static int swapQuadA(int move) { return SWAP_PAIRS[move & 7][0]; }
+
+    public static int swapQuadB(int move) { return SWAP_PAIRS[move & 7][1]; }
+
+    /**
+     * Encodes a move under this state's rules, ignoring its player.
+     * @return the encoded move, or -1 if the move is not well-formed under these rules
+     */
+    public int encode(PentagoMove m) {
+        int x = m.getXMove();
+        int y = m.getYMove();
+        if (x < 0 || x >= BOARD_SIZE || y < 0 || y >= BOARD_SIZE) { return ILLEGAL; }
+        if (rules == Rules.SWAP) { return encodeSwapMove(x, y, m.getASwap(), m.getBSwap()); }
+        if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= 2) { return ILLEGAL; }
+        return encodeMove(x, y, m.getASwap(), m.getBSwap());
+    }
+
+    public static int moveX(int move) { return (move >>> 3) / BOARD_SIZE; }
+
+    public static int moveY(int move) { return (move >>> 3) % BOARD_SIZE; }
+
+    public static int moveQuad(int move) { return move >>> 1 & 3; }
+
+    public static int moveOp(int move) { return move & 1; }
+
+    /**
+     * @return the shared PentagoMove instance for the turn player corresponding to an encoded move.
+     */
+    public PentagoMove toMove(int move) {
+        return PentagoMove.fromInt(turnPlayer * MAX_MOVES + move, rules);
+    }
+
+    /**
+     * Finds every move of the turn player that ends the game with a winner, without applying any of them, see
+     * decisiveMoves. Moves completing lines for both players (draws) are in neither set.
+     * @param wins receives, per twist (quad * 2 + op, or swap pair), the mask of squares whose placement wins outright;
+     *             entries past getNumTwists() are cleared
+     * @param losses receives, per twist, the mask of squares whose placement makes the opponent win; may be null if
+     *               only the wins are needed
+     * @return true if at least one winning move exists
+     */
+    public boolean getDecisiveMoves(long[] wins, long[] losses) {
+        return decisiveMoves(getPlayerMask(turnPlayer), getPlayerMask(1 - turnPlayer), wins, losses);
+    }
+
+    /**
+     * Threats of either player, whether or not it is their turn: for each twist (quad * 2 + op), the squares where
+     * the player would win outright by placing a piece and applying that twist. A twist can complete a line that
+     * is not on the board yet, or break one, and both are accounted for. For the opponent of the turn player these
+     * are the replies that must be stopped; the turn player's own threats are its winning moves.
+     * @param threats receives one mask of squares per twist
+     * @return true if the player has at least one threat
+     */
+    public boolean getThreatMasks(int player, long[] threats) {
+        return decisiveMoves(getPlayerMask(player), getPlayerMask(1 - player), threats, null);
+    }
+
+    /**
+     * @return the squares from which the player could win outright with some twist, see getThreatMasks.
+     */
+    public long getThreatSquares(int player) {
+        long mine = getPlayerMask(player);
+        long theirs = getPlayerMask(1 - player);
+        long empty = ~(whiteMask | blackMask) & FULL_BOARD;
+        long squares = 0L;
+        for (int twist = 0; twist < numTwists; twist++) {
+            if (hasLine(applyTwist(rules, theirs, twist))) { continue; }
+            squares |= revertTwist(rules, completionSquares(applyTwist(rules, mine, twist)), twist);
+        }
+        return squares & empty;
+    }
+
+    /**
+     * @return true if the player has winning placements on two or more squares. Occupying one of them does not
+     * stop the others, so the defender has to break the remaining lines with its twist.
+     */
+    public boolean hasDoubleThreat(int player) {
+        long squares = getThreatSquares(player);
+        return (squares & (squares - 1)) != 0;
+    }
+
+    /**
+     * A twist is a permutation of squares, so twist(mine | square) = twist(mine) | twist(square): for each of the
+     * 8 twists the opponent's line status is fixed, and the winning placements are the squares that complete a line
+     * of the twisted pieces once moved by the twist.
+     * @param losses may be null if only the wins are needed
+     */
+    private boolean decisiveMoves(long mine, long theirs, long[] wins, long[] losses) {
+        long empty = ~(whiteMask | blackMask) & FULL_BOARD;
+        boolean anyWin = false;
+        for (int twist = numTwists; twist < NUM_TWISTS; twist++) {
+            wins[twist] = 0L;
+            if (losses != null) { losses[twist] = 0L; }
+        }
+        for (int twist = 0; twist < numTwists; twist++) {
+            long completing = completionSquares(applyTwist(rules, mine, twist));
+            long lineSquares = revertTwist(rules, completing, twist) & empty; // Placements that give us a line
+            if (hasLine(applyTwist(rules, theirs, twist))) {
+                wins[twist] = 0L;
+                if (losses != null) { losses[twist] = empty & ~lineSquares; }
+            } else {
+                wins[twist] = lineSquares;
+                if (losses != null) { losses[twist] = 0L; }
+                anyWin |= lineSquares != 0;
+            }
+        }
+        return anyWin;
+    }
+
+    /**
+     * @return the squares that complete a line of the given mask when added to it, or every square if it has a line.
+     */
+    private static long completionSquares(long mask) {
+        long squares = 0L;
+        for (long line : WIN_LINES) {
+            long missing = line & ~mask;
+            if (missing == 0) { return FULL_BOARD; }
+            if ((missing & (missing - 1)) == 0) { squares |= missing; }
+        }
+        return squares;
+    }
+
+    public boolean isLegal(PentagoMove m) {
+        if (encode(m) == ILLEGAL) { return false; } // Swap of two distinct quadrants, or rotate90/flip of one
         if (turnPlayer != m.getPlayerID() || m.getPlayerID() == ILLEGAL) { return false; } //Check right player
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return isEmptyAt(m.getXMove(), m.getYMove());
     }
 
     /**
@@ -170,101 +619,320 @@ public class PentagoBoardState extends BoardState {
      */
     public boolean isPlaceLegal(PentagoCoord c) {
         if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return isEmptyAt(c.getX(), c.getY());
     }
 
     public void processMove(PentagoMove m) throws IllegalArgumentException {
         if (!isLegal(m)) { throw new IllegalArgumentException("Invalid move. Move: " + m.toPrettyString()); }
-        updateQuadrants(m);
+        int move = encode(m);
+        applyMove(move >>> 3, move & 7);
+    }
+
+    /**
+     * Processes an encoded move for the turn player, as produced by getAllLegalMoves(int[]).
+     */
+    public void processMove(int move) throws IllegalArgumentException {
+        int bit = move >>> 3;
+        if (move < 0 || move >= MAX_MOVES || (move & 7) >= numTwists || ((whiteMask | blackMask) >>> bit & 1L) != 0) {
+            throw new IllegalArgumentException("Invalid move. Move: " + move);
+        }
+        applyMove(bit, move & 7);
+    }
+
+    private void applyMove(int bit, int twist) {
+        pushWinner();
+        updateQuadrants(bit, twist);
         updateWinner();
         if (turnPlayer != FIRST_PLAYER) { turnNumber += 1; } // Update the turn number if needed
         turnPlayer = 1 - turnPlayer; // Swap player
     }
 
     /**
-     * Updates the appropriate quandrant based on the location of the move m
-     * @param m: Pentago move
-     */
-    private void updateQuadrants(PentagoMove m) {
-        Piece turnPiece = turnPlayer == WHITE ? Piece.WHITE : Piece.BLACK;
-        int x = m.getMoveCoord().getX();
-        int y = m.getMoveCoord().getY();
-        boolean isLeftQuadMove = y / 3 == 0;
-        boolean isTopQuadMove = x / 3 == 0;
-        if (isLeftQuadMove && isTopQuadMove) { //Top left quadrant
-            quadrants[0][x][y] = turnPiece;
-        } else if (!isLeftQuadMove && isTopQuadMove) { //Top right quadrant
-            quadrants[1][x][y % QUAD_SIZE] = turnPiece;
-        } else if (isLeftQuadMove) { //Bottom left quadrant
-            quadrants[2][x % QUAD_SIZE][y] = turnPiece;
-        } else { //Bottom right quadrant
-            quadrants[3][x % QUAD_SIZE][y % QUAD_SIZE] = turnPiece;
-        }
-
-        //Swapping mechanism
-        int a = m.getASwap();
-        int b = m.getBSwap();
-        Piece[][] tmp = quadrants[a];
-        //quadrants[a] = quadrants[b];
-        //quadrants[b] = tmp;
-        Piece[][] tmp2 = new Piece [quadrants[a].length][quadrants[a].length];
-
-
-        int N = tmp.length;
-        // check
-//        for (int j = 0; j < N; j++)
-//        {
-//            for (int i = 0; i <N; i++){
-//                System.out.print(tmp[j][i]);
-//            }
-//        }
-        switch (b){
-            case 0:
-                // rotate 90 right
-                //System.out.println("Rotate");
-                for (int j = 0; j < N; j++)
-                {
-                    for (int i = N - 1; i >= 0; i--) {
-                        //System.arraycopy(quadrants[a][j],  N - 1 - i, tmp[i], j, 1);
-                        System.arraycopy(tmp[i], j, tmp2[j],  N - 1 - i, 1);
-                    }
-                }
-                break;
-            case 1:
-               // flip a quadrant
-                //System.out.println("Flip");
-                for (int j = 0; j < N; j++)
-                {
-                    for (int i = N - 1; i >= 0; i--) {
-                        //System.arraycopy(quadrants[a][j],  N - 1 - i, tmp[i], j, 1);
-                        System.arraycopy(tmp[j], i, tmp2[j],  N - 1 - i, 1);
-                    }
-                }
-                break;
+     * Reverts the last move processed on this state, restoring the board, winner, turn player and turn number
+     * exactly as they were before it. Lets a search walk a single state down and back up the tree instead of
+     * cloning it for every child. Only moves processed on this object can be undone; a clone starts without history.
+     * @param m the move that was last passed to processMove
+     */
+    public void undoMove(PentagoMove m) throws IllegalArgumentException {
+        int move = encode(m);
+        if (move == ILLEGAL || m.getPlayerID() != 1 - turnPlayer || !revertMove(move >>> 3, move & 7)) {
+            throw new IllegalArgumentException("Undo of a move that was not played last. Move: " + m.toPrettyString());
+        }
+    }
 
+    /**
+     * Reverts the last encoded move processed on this state, see undoMove(PentagoMove).
+     */
+    public void undoMove(int move) throws IllegalArgumentException {
+        if (move < 0 || move >= MAX_MOVES || (move & 7) >= numTwists || !revertMove(move >>> 3, move & 7)) {
+            throw new IllegalArgumentException("Undo of a move that was not played last. Move: " + move);
         }
+    }
+
+    private boolean revertMove(int bit, int twist) {
+        if (historySize == 0) { throw new IllegalStateException("No move to undo."); }
+        int prevPlayer = 1 - turnPlayer;
+        long prevWhite = revertTwist(rules, whiteMask, twist);
+        long prevBlack = revertTwist(rules, blackMask, twist);
+        if (((prevPlayer == WHITE ? prevWhite : prevBlack) >>> bit & 1L) == 0) { return false; }
+        setQuadrants(twist, prevWhite, prevBlack);
+        removePiece(prevPlayer, bit);
+        turnPlayer = prevPlayer;
+        if (turnPlayer != FIRST_PLAYER) { turnNumber -= 1; }
+        winner = winnerHistory[--historySize];
+        return true;
+    }
+
+    private void pushWinner() {
+        if (winnerHistory == null) {
+            winnerHistory = new int[BOARD_SIZE * BOARD_SIZE]; // Each move fills a square, so this is the maximum depth
+        }
+        winnerHistory[historySize++] = winner;
+    }
 
+    /**
+     * Places the turn player's piece on the given bit and applies the rotate/flip or swap to the player masks.
+     */
+    private void updateQuadrants(int bit, int twist) {
+        addPiece(turnPlayer, bit);
+        setQuadrants(twist, applyTwist(rules, whiteMask, twist), applyTwist(rules, blackMask, twist));
+    }
 
-        quadrants[a] = tmp2;
-        buildBoardFromQuadrants();
+    /**
+     * Replaces the masks by ones that differ only inside the quadrants touched by the twist, one quadrant at a time.
+     */
+    private void setQuadrants(int twist, long newWhite, long newBlack) {
+        if (rules == Rules.TWIST) {
+            setQuadrant(twist >>> 1, newWhite, newBlack);
+            return;
+        }
+        long first = QUAD_MASKS[SWAP_PAIRS[twist][0]];
+        setQuadrant(SWAP_PAIRS[twist][0], whiteMask & ~first | newWhite & first, blackMask & ~first | newBlack & first);
+        setQuadrant(SWAP_PAIRS[twist][1], newWhite, newBlack);
     }
 
+    private void addPiece(int player, int bit) {
+        if (player == WHITE) {
+            whiteMask |= 1L << bit;
+        } else {
+            blackMask |= 1L << bit;
+        }
+        addToLines(player, bit, 1);
+        hash ^= CELL_ZOBRIST[player][bit];
+        turnedHash ^= CELL_ZOBRIST[player][BOARD_SIZE * BOARD_SIZE - 1 - bit];
+    }
 
+    private void removePiece(int player, int bit) {
+        if (player == WHITE) {
+            whiteMask &= ~(1L << bit);
+        } else {
+            blackMask &= ~(1L << bit);
+        }
+        addToLines(player, bit, -1);
+        hash ^= CELL_ZOBRIST[player][bit];
+        turnedHash ^= CELL_ZOBRIST[player][BOARD_SIZE * BOARD_SIZE - 1 - bit];
+    }
 
-    private void buildBoardFromQuadrants() {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            int quadrantRow = i < 3 ? i : i - 3;
-            int leftQuad = i < 3 ? 0 : 2;
-            int rightQuad = i < 3 ? 1 : 3;
-            System.arraycopy(quadrants[leftQuad][quadrantRow], 0, board[i], 0, 3);
-            System.arraycopy(quadrants[rightQuad][quadrantRow], 0, board[i], 3, 3);
+    /**
+     * Replaces the masks by ones that differ only inside the given quadrant, updating the hash one quadrant at a time.
+     */
+    private void setQuadrant(int quad, long newWhite, long newBlack) {
+        int offset = QUAD_OFFSET[quad];
+        int oldWhite = extractQuadrant(whiteMask, offset);
+        int nextWhite = extractQuadrant(newWhite, offset);
+        int oldBlack = extractQuadrant(blackMask, offset);
+        int nextBlack = extractQuadrant(newBlack, offset);
+        hash ^= QUAD_ZOBRIST[WHITE][quad][oldWhite] ^ QUAD_ZOBRIST[WHITE][quad][nextWhite]
+                ^ QUAD_ZOBRIST[BLACK][quad][oldBlack] ^ QUAD_ZOBRIST[BLACK][quad][nextBlack];
+        int turnedQuad = NUM_QUADS - 1 - quad;
+        turnedHash ^= QUAD_ZOBRIST[WHITE][turnedQuad][REVERSE_QUAD[oldWhite]] ^ QUAD_ZOBRIST[WHITE][turnedQuad][REVERSE_QUAD[nextWhite]]
+                ^ QUAD_ZOBRIST[BLACK][turnedQuad][REVERSE_QUAD[oldBlack]] ^ QUAD_ZOBRIST[BLACK][turnedQuad][REVERSE_QUAD[nextBlack]];
+        whiteMask = newWhite;
+        blackMask = newBlack;
+        recountLines(QUAD_LINES[quad]);
+    }
+
+    /**
+     * Adds delta to the player's count in every line through the given square.
+     */
+    private void addToLines(int player, int bit, int delta) {
+        for (int line : CELL_LINES[bit]) {
+            long step = (long) delta << ((line & 15) << 2);
+            if (player == WHITE) {
+                if (line < 16) { whiteLinesLo += step; } else { whiteLinesHi += step; }
+            } else {
+                if (line < 16) { blackLinesLo += step; } else { blackLinesHi += step; }
+            }
         }
     }
 
+    /**
+     * Recomputes both players' counts in the given lines from the masks, after a twist moved pieces around.
+     */
+    private void recountLines(int[] lines) {
+        for (int line : lines) {
+            int shift = (line & 15) << 2;
+            long clear = ~(0xFL << shift);
+            long white = (long) Long.bitCount(whiteMask & WIN_LINES[line]) << shift;
+            long black = (long) Long.bitCount(blackMask & WIN_LINES[line]) << shift;
+            if (line < 16) {
+                whiteLinesLo = whiteLinesLo & clear | white;
+                blackLinesLo = blackLinesLo & clear | black;
+            } else {
+                whiteLinesHi = whiteLinesHi & clear | white;
+                blackLinesHi = blackLinesHi & clear | black;
+            }
+        }
+    }
+
+    /**
+     * Applies the operation selected by the low 3 bits of an encoded move under the given rules to a mask.
+     */
+    static long applyTwist(Rules rules, long mask, int twist) {
+        return rules == Rules.TWIST ? twistQuadrant(mask, twist >>> 1, twist & 1) : swapQuadrants(mask, twist);
+    }
+
+    /**
+     * Inverse of applyTwist. A swap is its own inverse.
+     */
+    static long revertTwist(Rules rules, long mask, int twist) {
+        return rules == Rules.TWIST ? untwistQuadrant(mask, twist >>> 1, twist & 1) : swapQuadrants(mask, twist);
+    }
+
+    /**
+     * Exchanges the contents of the pair of quadrants with the given index in SWAP_PAIRS.
+     */
+    private static long swapQuadrants(long mask, int pair) {
+        int a = SWAP_PAIRS[pair][0];
+        int b = SWAP_PAIRS[pair][1];
+        int offsetA = QUAD_OFFSET[a];
+        int offsetB = QUAD_OFFSET[b];
+        return (mask & ~(QUAD_MASKS[a] | QUAD_MASKS[b]))
+                | depositQuadrant(extractQuadrant(mask, offsetB), offsetA)
+                | depositQuadrant(extractQuadrant(mask, offsetA), offsetB);
+    }
+
+    /**
+     * Rotates 90 degrees clockwise (op 0) or flips left-to-right (op 1) the given quadrant of a mask.
+     */
+    static long twistQuadrant(long mask, int quad, int op) {
+        return applyQuadrantTable(mask, quad, TWIST_TABLE[op]);
+    }
+
+    private static long untwistQuadrant(long mask, int quad, int op) {
+        return applyQuadrantTable(mask, quad, UNTWIST_TABLE[op]);
+    }
+
+    private static long applyQuadrantTable(long mask, int quad, int[] table) {
+        int offset = QUAD_OFFSET[quad];
+        return (mask & ~QUAD_MASKS[quad]) | depositQuadrant(table[extractQuadrant(mask, offset)], offset);
+    }
+
+    /**
+     * Packs the 3x3 quadrant starting at the given bit offset into 9 bits, row-major.
+     */
+    private static int extractQuadrant(long mask, int offset) {
+        return (int) (mask >>> offset) & ROW_BITS
+                | ((int) (mask >>> (offset + BOARD_SIZE)) & ROW_BITS) << QUAD_SIZE
+                | ((int) (mask >>> (offset + 2 * BOARD_SIZE)) & ROW_BITS) << (2 * QUAD_SIZE);
+    }
+
+    private static long depositQuadrant(int quad, int offset) {
+        return ((long) (quad & ROW_BITS)) << offset
+                | ((long) (quad >>> QUAD_SIZE & ROW_BITS)) << (offset + BOARD_SIZE)
+                | ((long) (quad >>> (2 * QUAD_SIZE) & ROW_BITS)) << (offset + 2 * BOARD_SIZE);
+    }
+
+    private static int[] buildQuadOffsets() {
+        int[] offsets = new int[NUM_QUADS];
+        for (int q = 0; q < NUM_QUADS; q++) {
+            offsets[q] = bitIndex((q / 2) * QUAD_SIZE, (q % 2) * QUAD_SIZE);
+        }
+        return offsets;
+    }
+
+    private static long[] buildQuadMasks() {
+        long[] masks = new long[NUM_QUADS];
+        for (int q = 0; q < NUM_QUADS; q++) {
+            masks[q] = depositQuadrant((1 << QUAD_CELLS) - 1, QUAD_OFFSET[q]);
+        }
+        return masks;
+    }
+
+    private static int[][] buildTwistTable() {
+        int[][] table = new int[2][1 << QUAD_CELLS];
+        for (int quad = 0; quad < 1 << QUAD_CELLS; quad++) {
+            for (int i = 0; i < QUAD_SIZE; i++) {
+                for (int j = 0; j < QUAD_SIZE; j++) {
+                    if ((quad >>> (i * QUAD_SIZE + j) & 1) == 0) { continue; }
+                    table[0][quad] |= 1 << (j * QUAD_SIZE + QUAD_SIZE - 1 - i); // rotate 90 right: (i, j) -> (j, 2 - i)
+                    table[1][quad] |= 1 << (i * QUAD_SIZE + QUAD_SIZE - 1 - j); // flip: (i, j) -> (i, 2 - j)
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int[][] buildUntwistTable() {
+        int[][] table = new int[TWIST_TABLE.length][1 << QUAD_CELLS];
+        for (int op = 0; op < TWIST_TABLE.length; op++) {
+            for (int quad = 0; quad < 1 << QUAD_CELLS; quad++) {
+                table[op][TWIST_TABLE[op][quad]] = quad;
+            }
+        }
+        return table;
+    }
+
+    private static int[][] buildSwapTwists() {
+        int[][] table = new int[NUM_QUADS][NUM_QUADS];
+        for (int[] row : table) {
+            Arrays.fill(row, ILLEGAL);
+        }
+        for (int pair = 0; pair < SWAP_PAIRS.length; pair++) {
+            table[SWAP_PAIRS[pair][0]][SWAP_PAIRS[pair][1]] = pair;
+            table[SWAP_PAIRS[pair][1]][SWAP_PAIRS[pair][0]] = pair;
+        }
+        return table;
+    }
+
+    private static long[][] buildCellZobrist() {
+        Random keys = new Random(ZOBRIST_SEED); // Fixed seed so keys are stable across runs
+        long[][] table = new long[2][BOARD_SIZE * BOARD_SIZE];
+        for (int player = 0; player < 2; player++) {
+            for (int bit = 0; bit < BOARD_SIZE * BOARD_SIZE; bit++) {
+                table[player][bit] = keys.nextLong();
+            }
+        }
+        return table;
+    }
+
+    private static long[][][] buildQuadZobrist() {
+        long[][][] table = new long[2][NUM_QUADS][1 << QUAD_CELLS];
+        for (int player = 0; player < 2; player++) {
+            for (int q = 0; q < NUM_QUADS; q++) {
+                for (int quad = 0; quad < 1 << QUAD_CELLS; quad++) {
+                    long cells = depositQuadrant(quad, QUAD_OFFSET[q]);
+                    for (int bit = 0; bit < BOARD_SIZE * BOARD_SIZE; bit++) {
+                        if ((cells >>> bit & 1L) != 0) { table[player][q][quad] ^= CELL_ZOBRIST[player][bit]; }
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int[] buildReverseQuad() {
+        int[] table = new int[1 << QUAD_CELLS];
+        for (int quad = 0; quad < 1 << QUAD_CELLS; quad++) {
+            table[quad] = Integer.reverse(quad) >>> (32 - QUAD_CELLS);
+        }
+        return table;
+    }
+
     private void updateWinner() {
-        boolean playerWin = checkVerticalWin(turnPlayer) || checkHorizontalWin(turnPlayer) || checkDiagRightWin(turnPlayer) || checkDiagLeftWin(turnPlayer);
+        boolean playerWin = checkWin(turnPlayer);
         int otherPlayer = 1 - turnPlayer;
-        boolean otherWin = checkVerticalWin(otherPlayer) || checkHorizontalWin(otherPlayer) || checkDiagRightWin(otherPlayer) || checkDiagLeftWin(otherPlayer);
+        boolean otherWin = checkWin(otherPlayer);
         if (playerWin) { // Current player has won
             winner = otherWin ? Board.DRAW : turnPlayer;
         } else if (otherWin) { // Player's move caused the opponent to win
@@ -279,50 +947,74 @@ public class PentagoBoardState extends BoardState {
         return ((turnNumber >= MAX_TURNS - 1) && turnPlayer == BLACK) || winner != Board.NOBODY;
     }
 
-    private boolean checkVerticalWin(int player) {
-        return checkWinRange(player, 0, 2, 0, BOARD_SIZE, getNextVertical);
+    private boolean checkWin(int player) {
+        long fives = WIN_LENGTH * NIBBLE_ONES;
+        return player == WHITE
+                ? hasZeroNibble(whiteLinesLo ^ fives) || hasZeroNibble(whiteLinesHi ^ fives)
+                : hasZeroNibble(blackLinesLo ^ fives) || hasZeroNibble(blackLinesHi ^ fives);
+    }
+
+    private static boolean hasZeroNibble(long v) {
+        return ((v - NIBBLE_ONES) & ~v & NIBBLE_HIGHS) != 0;
     }
 
-    private boolean checkHorizontalWin(int player) {
-        return checkWinRange(player, 0, BOARD_SIZE, 0, 2, getNextHorizontal);
+    static boolean hasLine(long mask) {
+        for (long line : WIN_LINES) {
+            if ((mask & line) == line) { return true; }
+        }
+        return false;
     }
 
-    private boolean checkDiagRightWin(int player) {
-        return checkWinRange(player, 0, 2, 0, 2, getNextDiagRight);
+    private static int[][] buildCellLines() {
+        int[][] table = new int[BOARD_SIZE * BOARD_SIZE][];
+        for (int bit = 0; bit < table.length; bit++) {
+            table[bit] = linesCrossing(1L << bit);
+        }
+        return table;
     }
 
-    private boolean checkDiagLeftWin(int player) {
-        return checkWinRange(player, 0 ,2, BOARD_SIZE - 2, BOARD_SIZE, getNextDiagLeft);
+    private static int[][] buildQuadLines() {
+        int[][] table = new int[NUM_QUADS][];
+        for (int q = 0; q < NUM_QUADS; q++) {
+            table[q] = linesCrossing(QUAD_MASKS[q]);
+        }
+        return table;
     }
 
-    private boolean checkWinRange(int player, int xStart, int xEnd, int yStart, int yEnd, UnaryOperator<PentagoCoord> direction) {
-        boolean win = false;
-        for (int i = xStart; i < xEnd; i++) {
-            for (int j = yStart; j < yEnd; j++) {
-                win |= checkWin(player, new PentagoCoord(i, j), direction);
-                if (win) { return true; }
-            }
+    private static int[] linesCrossing(long squares) {
+        int count = 0;
+        for (long line : WIN_LINES) {
+            if ((line & squares) != 0) { count++; }
         }
-        return false;
+        int[] lines = new int[count];
+        count = 0;
+        for (int i = 0; i < WIN_LINES.length; i++) {
+            if ((WIN_LINES[i] & squares) != 0) { lines[count++] = i; }
+        }
+        return lines;
     }
 
-    private boolean checkWin(int player, PentagoCoord start, UnaryOperator<PentagoCoord> direction) {
-        int winCounter = 0;
-        Piece currColour = player == 0 ? Piece.WHITE : Piece.BLACK;
-        PentagoCoord current = start;
-        while(true) {
-            try {
-                if (currColour == this.board[current.getX()][current.getY()]) {
-                    winCounter++;
-                    current = direction.apply(current);
-                } else {
-                    break;
+    private static long[] buildWinLines() {
+        ArrayList<Long> lines = new ArrayList<>();
+        for (int[] dir : LINE_DIRECTIONS) {
+            for (int i = 0; i < BOARD_SIZE; i++) {
+                for (int j = 0; j < BOARD_SIZE; j++) {
+                    int endX = i + (WIN_LENGTH - 1) * dir[0];
+                    int endY = j + (WIN_LENGTH - 1) * dir[1];
+                    if (endX < 0 || endX >= BOARD_SIZE || endY < 0 || endY >= BOARD_SIZE) { continue; }
+                    long line = 0L;
+                    for (int k = 0; k < WIN_LENGTH; k++) {
+                        line |= 1L << bitIndex(i + k * dir[0], j + k * dir[1]);
+                    }
+                    lines.add(line);
                 }
-            } catch (IllegalArgumentException e) { //We have run off the board
-                break;
             }
         }
-        return winCounter >= 5;
+        long[] table = new long[lines.size()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = lines.get(i);
+        }
+        return table;
     }
 
     public void printBoard() {
@@ -338,7 +1030,7 @@ public class PentagoBoardState extends BoardState {
             boardString.append("|");
             for (int j = 0; j < BOARD_SIZE; j++) {
                 boardString.append(" ");
-                boardString.append(board[i][j].toString());
+                boardString.append(pieceAt(bitIndex(i, j)).toString());
                 boardString.append(" |");
                 if (j == QUAD_SIZE - 1) {
                     boardString.append("|");
@@ -354,7 +1046,7 @@ public class PentagoBoardState extends BoardState {
     }
 
     public static void main(String[] args) {
-        PentagoBoardState pbs = new PentagoBoardState();
+        PentagoBoardState pbs = new PentagoBoardState(args.length > 0 ? Rules.valueOf(args[0].toUpperCase()) : Rules.fromSystemProperty());
 
         Scanner scanner = new Scanner(System.in);
         int id = FIRST_PLAYER;
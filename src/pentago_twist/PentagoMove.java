@@ -1,17 +1,26 @@
 package pentago_twist;
 
 import boardgame.Move;
+import pentago_twist.PentagoBoardState.Rules;
 
 /**
  * @author mgrenander
  */
 public class PentagoMove extends Move {
+    public static final int NUM_MOVE_CODES = 2 * PentagoBoardState.MAX_MOVES; // Every rotate/flip move of either player
+    private static final PentagoMove[] CANONICAL = buildCanonicalMoves(Rules.TWIST); // Immutable shared instance for each code
+    private static final PentagoMove[] CANONICAL_SWAP = buildCanonicalMoves(Rules.SWAP); // Same for Swap codes, null if unused
+
     private int playerId;
     private int xMove;
     private int yMove;
     private int aSwap;
     private int bSwap;
     private boolean fromBoard;
+    private boolean canonical;
+    private PentagoCoord coord; // Only set on canonical moves
+    private String prettyString;
+    private String transportable;
 
     public PentagoMove(PentagoCoord coord, int aSwap, int bSwap, int playerId) {
         this(coord.getX(), coord.getY(), aSwap, bSwap, playerId);
@@ -40,9 +49,85 @@ public class PentagoMove extends Move {
         }
     }
 
+    /**
+     * @return the shared immutable move for a code in [0, NUM_MOVE_CODES), as produced by toInt().
+     */
+    public static PentagoMove fromInt(int code) {
+        return fromInt(code, Rules.TWIST);
+    }
+
+    /**
+     * @return the shared immutable move for a code of the given rules, as produced by toInt(rules).
+     */
+    public static PentagoMove fromInt(int code, Rules rules) {
+        PentagoMove[] table = rules == Rules.TWIST ? CANONICAL : CANONICAL_SWAP;
+        if (code < 0 || code >= NUM_MOVE_CODES || table[code] == null) {
+            throw new IllegalArgumentException("Invalid move code: " + code);
+        }
+        return table[code];
+    }
+
+    /**
+     * Encodes this move as playerId * PentagoBoardState.MAX_MOVES + PentagoBoardState.encodeMove(x, y, aSwap, bSwap).
+     * @return the code, or -1 if the move does not describe an on-board rotate/flip move for a valid player.
+     */
+    public int toInt() {
+        return toInt(Rules.TWIST);
+    }
+
+    /**
+     * Encodes this move as playerId * PentagoBoardState.MAX_MOVES plus its encoding under the given rules, see
+     * PentagoBoardState.encodeMove and PentagoBoardState.encodeSwapMove.
+     * @return the code, or -1 if the move is not well-formed under those rules or has no valid player.
+     */
+    public int toInt(Rules rules) {
+        if (xMove < 0 || xMove >= PentagoBoardState.BOARD_SIZE || yMove < 0 || yMove >= PentagoBoardState.BOARD_SIZE
+                || (playerId != PentagoBoardState.WHITE && playerId != PentagoBoardState.BLACK)) {
+            return -1;
+        }
+        if (rules == Rules.SWAP) {
+            int move = PentagoBoardState.encodeSwapMove(xMove, yMove, aSwap, bSwap);
+            return move < 0 ? -1 : playerId * PentagoBoardState.MAX_MOVES + move;
+        }
+        if (aSwap < 0 || aSwap >= 4 || bSwap < 0 || bSwap >= 2) {
+            return -1;
+        }
+        return playerId * PentagoBoardState.MAX_MOVES + PentagoBoardState.encodeMove(xMove, yMove, aSwap, bSwap);
+    }
+
+    /**
+     * @return the shared immutable instance equal to this move, or this move if it has no code.
+     */
+    public PentagoMove intern() {
+        int code = toInt();
+        return code < 0 ? this : CANONICAL[code];
+    }
+
+    private static PentagoMove[] buildCanonicalMoves(Rules rules) {
+        PentagoMove[] moves = new PentagoMove[NUM_MOVE_CODES];
+        for (int code = 0; code < NUM_MOVE_CODES; code++) {
+            int move = code % PentagoBoardState.MAX_MOVES;
+            if ((move & 7) >= rules.numTwists) { continue; }
+            boolean swap = rules == Rules.SWAP;
+            PentagoMove m = new PentagoMove(PentagoBoardState.moveX(move), PentagoBoardState.moveY(move),
+                    swap ? PentagoBoardState.swapQuadA(move) : PentagoBoardState.moveQuad(move),
+                    swap ? PentagoBoardState.swapQuadB(move) : PentagoBoardState.moveOp(move), code / PentagoBoardState.MAX_MOVES);
+            m.coord = new PentagoCoord(m.xMove, m.yMove);
+            m.prettyString = m.toPrettyString();
+            m.transportable = m.toTransportable();
+            m.canonical = true;
+            moves[code] = m;
+        }
+        return moves;
+    }
+
     // Getters
     public PentagoCoord getMoveCoord() {
-        return new PentagoCoord(this.xMove, this.yMove); }
+        return canonical ? coord : new PentagoCoord(this.xMove, this.yMove); }
+    public int getXMove() {
+        return this.xMove; }
+    public int getYMove() {
+        return this.yMove; }
     public int getASwap() {
         return this.aSwap; }
     public int getBSwap() {
@@ -68,10 +153,16 @@ public class PentagoMove extends Move {
 
     @Override
     public void setPlayerID(int playerId) {
+        if (canonical && playerId != this.playerId) {
+            throw new UnsupportedOperationException("Cannot change the player of a shared move instance.");
+        }
         this.playerId = playerId; }
 
     @Override
     public void setFromBoard(boolean fromBoard) {
+        if (canonical && fromBoard) {
+            throw new UnsupportedOperationException("Cannot modify a shared move instance.");
+        }
         this.fromBoard = fromBoard; }
 
     @Override
@@ -80,13 +171,14 @@ public class PentagoMove extends Move {
 
     @Override
     public String toPrettyString() {
-
+        if (canonical) { return prettyString; }
         return String.format("Player %d, Move: (%d, %d), R/F: (%d, %d)", playerId, xMove, yMove, aSwap, bSwap);
         //return String.format("Player %d, Move: (%d, %d), Swap: (%d, %d)", playerId, xMove, yMove, aSwap, bSwap);
     }
 
     @Override
     public String toTransportable() {
+        if (canonical) { return transportable; }
         return String.format("%d %d %d %d %d", xMove, yMove, aSwap, bSwap, playerId);
     }
 }
@@ -0,0 +1,259 @@
+package pentago_twist;
+
+import boardgame.Board;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft for Pentago-Twist: walks every line of play to a fixed depth and counts the leaves, i.e. the positions at
+ * that depth plus the finished games met on the way, and how those finished games ended. The counts only depend on
+ * the rules, so any two implementations must agree on them, while the time taken measures raw move generation and
+ * make/undo speed.
+ *
+ * Usage: java pentago_twist.PentagoPerft [-d depth] [-r twist|swap] [-t threads] [-c] [-m "x y a b,x y a b,..."]
+ *   '-d depth' sets the search depth (default 3).
+ *   '-r rules' selects the rules (default twist).
+ *   '-t threads' runs the ForkJoin version on that many threads instead of the serial one.
+ *   '-c' checks the counts against PentagoReferenceBoardState and lists the root moves that disagree.
+ *   '-m moves' plays the given moves from the empty board first, for the turn player in order.
+ * @author Samuel Morris (dodobird)
+ */
+public class PentagoPerft {
+    private static final int DEFAULT_DEPTH = 3;
+    private static final int SERIAL_DEPTH = 2; // Subtrees this shallow are counted on the calling thread
+
+    /**
+     * Counts accumulated by a perft run.
+     */
+    public static final class Result {
+        private long nodes;
+        private long whiteWins;
+        private long blackWins;
+        private long draws;
+
+        public long getNodes() { return nodes; }
+
+        public long getWhiteWins() { return whiteWins; }
+
+        public long getBlackWins() { return blackWins; }
+
+        public long getDraws() { return draws; }
+
+        void addLeaf(boolean gameOver, int winner) {
+            nodes++;
+            if (!gameOver) { return; }
+            if (winner == PentagoBoardState.WHITE) {
+                whiteWins++;
+            } else if (winner == PentagoBoardState.BLACK) {
+                blackWins++;
+            } else if (winner == Board.DRAW) {
+                draws++;
+            }
+        }
+
+        void add(Result r) {
+            nodes += r.nodes;
+            whiteWins += r.whiteWins;
+            blackWins += r.blackWins;
+            draws += r.draws;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Result)) return false;
+            Result r = (Result) o;
+            return nodes == r.nodes && whiteWins == r.whiteWins && blackWins == r.blackWins && draws == r.draws;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(nodes * 31 + whiteWins) * 31 + Long.hashCode(blackWins * 31 + draws);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("nodes=%d whiteWins=%d blackWins=%d draws=%d", nodes, whiteWins, blackWins, draws);
+        }
+    }
+
+    /**
+     * Counts the leaves below the given state on the calling thread, walking a single copy with make/undo.
+     */
+    public static Result perft(PentagoBoardState state, int depth) {
+        PentagoBoardState board = (PentagoBoardState) state.clone();
+        int[][] moves = new int[depth][PentagoBoardState.MAX_MOVES]; // One buffer per ply, reused across siblings
+        Result result = new Result();
+        count(board, depth, moves, result);
+        return result;
+    }
+
+    private static void count(PentagoBoardState board, int depth, int[][] moves, Result result) {
+        if (depth == 0 || board.gameOver()) {
+            result.addLeaf(board.gameOver(), board.getWinner());
+            return;
+        }
+        int[] buffer = moves[depth - 1];
+        int numMoves = board.getAllLegalMoves(buffer);
+        for (int i = 0; i < numMoves; i++) {
+            board.processMove(buffer[i]);
+            count(board, depth - 1, moves, result);
+            board.undoMove(buffer[i]);
+        }
+    }
+
+    /**
+     * Counts the leaves below the given state on a ForkJoin pool of the given size. Every child is a task down to
+     * SERIAL_DEPTH, below which subtrees are counted serially.
+     */
+    public static Result perftParallel(PentagoBoardState state, int depth, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new PerftTask((PentagoBoardState) state.clone(), depth));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final class PerftTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+        private final PentagoBoardState board;
+        private final int depth;
+
+        PerftTask(PentagoBoardState board, int depth) {
+            this.board = board;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Result compute() {
+            if (depth <= SERIAL_DEPTH || board.gameOver()) {
+                return perft(board, depth);
+            }
+            int[] moves = new int[PentagoBoardState.MAX_MOVES];
+            int numMoves = board.getAllLegalMoves(moves);
+            List<PerftTask> children = new ArrayList<>(numMoves);
+            for (int i = 0; i < numMoves; i++) {
+                PentagoBoardState child = (PentagoBoardState) board.clone();
+                child.processMove(moves[i]);
+                children.add(new PerftTask(child, depth - 1));
+            }
+            Result result = new Result();
+            for (PerftTask task : invokeAll(children)) {
+                result.add(task.join());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts the leaves below the given reference state, cloning it for every move as the original code had to.
+     */
+    public static Result perft(PentagoReferenceBoardState state, int depth) {
+        Result result = new Result();
+        countReference(state, depth, result);
+        return result;
+    }
+
+    private static void countReference(PentagoReferenceBoardState board, int depth, Result result) {
+        if (depth == 0 || board.gameOver()) {
+            result.addLeaf(board.gameOver(), board.getWinner());
+            return;
+        }
+        for (PentagoMove move : board.getAllLegalMoves()) {
+            PentagoReferenceBoardState child = (PentagoReferenceBoardState) board.clone();
+            child.processMove(move);
+            countReference(child, depth - 1, result);
+        }
+    }
+
+    /**
+     * Compares every root move of both implementations at the given depth, printing the moves that disagree.
+     * @return true if both have the same root moves with the same counts
+     */
+    public static boolean check(PentagoBoardState state, PentagoReferenceBoardState reference, int depth) {
+        ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+        ArrayList<PentagoMove> referenceMoves = reference.getAllLegalMoves();
+        boolean same = true;
+        if (moves.size() != referenceMoves.size()) {
+            System.out.println("Root move counts differ: " + moves.size() + " vs reference " + referenceMoves.size());
+            same = false;
+        }
+        for (int i = 0; i < Math.min(moves.size(), referenceMoves.size()); i++) {
+            PentagoMove move = moves.get(i);
+            if (!move.toTransportable().equals(referenceMoves.get(i).toTransportable())) {
+                System.out.println("Root move " + i + " differs: " + move.toPrettyString()
+                        + " vs reference " + referenceMoves.get(i).toPrettyString());
+                same = false;
+                continue;
+            }
+            PentagoBoardState child = (PentagoBoardState) state.clone();
+            child.processMove(move);
+            PentagoReferenceBoardState referenceChild = (PentagoReferenceBoardState) reference.clone();
+            referenceChild.processMove(referenceMoves.get(i));
+            Result result = perft(child, depth - 1);
+            Result expected = perft(referenceChild, depth - 1);
+            if (!result.equals(expected)) {
+                System.out.println(move.toPrettyString() + ": " + result + " vs reference " + expected);
+                same = false;
+            }
+        }
+        return same;
+    }
+
+    public static void main(String[] args) {
+        int depth = DEFAULT_DEPTH;
+        PentagoBoardState.Rules rules = PentagoBoardState.Rules.TWIST;
+        int threads = 0;
+        boolean checked = false;
+        String moves = "";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d")) {
+                depth = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-r")) {
+                rules = PentagoBoardState.Rules.valueOf(args[++i].toUpperCase());
+            } else if (args[i].equals("-t")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-c")) {
+                checked = true;
+            } else if (args[i].equals("-m")) {
+                moves = args[++i];
+            } else {
+                depth = 0; // Unknown option
+            }
+        }
+        if (depth < 1) {
+            System.err.println("Usage: java pentago_twist.PentagoPerft [-d depth] [-r twist|swap] [-t threads] [-c] [-m \"x y a b,...\"]");
+            return;
+        }
+
+        PentagoBoardState state = new PentagoBoardState(rules);
+        PentagoReferenceBoardState reference = new PentagoReferenceBoardState(rules);
+        for (String move : moves.split(",")) {
+            if (move.trim().isEmpty()) { continue; }
+            PentagoMove m = new PentagoMove(move.trim() + " " + state.getTurnPlayer());
+            state.processMove(m);
+            reference.processMove(m);
+        }
+        System.out.println(rules + " rules, turn player " + state.getTurnPlayer() + ":");
+        System.out.println(state);
+
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            Result result = threads > 0 ? perftParallel(state, d, threads) : perft(state, d);
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            System.out.println(String.format("perft(%d) %s time=%dms nps=%d", d, result, elapsed / 1000000,
+                    (long) (result.getNodes() * 1e9 / elapsed)));
+        }
+        if (checked) {
+            long start = System.nanoTime();
+            boolean same = check(state, reference, depth);
+            System.out.println(String.format("check(%d) against the reference: %s in %dms", depth,
+                    same ? "OK" : "MISMATCH", (System.nanoTime() - start) / 1000000));
+            if (!same) { System.exit(1); }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pentago_twist;
+
+import boardgame.Move;
+
+import java.util.SplittableRandom;
+
+/**
+ * The primitive make/unmake API shared by the Pentago-Twist board states, so that a search can run on the
+ * standard 6x6 board or on a larger variant. Moves are encoded as ints in [0, getMaxMoves()) for the turn player.
+ * @author Samuel Morris (dodobird)
+ */
+public interface PentagoSearchState {
+    int getTurnPlayer();
+
+    int getTurnNumber();
+
+    int getWinner();
+
+    boolean gameOver();
+
+    /**
+     * @return an upper bound on the number of legal moves, i.e. the buffer size getAllLegalMoves(int[]) needs.
+     */
+    int getMaxMoves();
+
+    /**
+     * Fills the buffer with the encoded legal moves and returns how many were written.
+     */
+    int getAllLegalMoves(int[] moves);
+
+    void processMove(int move) throws IllegalArgumentException;
+
+    /**
+     * Reverts the last move processed on this state, restoring it exactly.
+     */
+    void undoMove(int move) throws IllegalArgumentException;
+
+    /**
+     * @return a uniformly random legal encoded move, drawn from getRandom().
+     */
+    int getRandomEncodedMove();
+
+    /**
+     * @return the move object to send to the server for an encoded move of the turn player.
+     */
+    Move toMove(int move);
+
+    /**
+     * @return the 64-bit Zobrist key of the position.
+     */
+    long getHash();
+
+    SplittableRandom getRandom();
+
+    void setRandom(SplittableRandom rand);
+
+    /**
+     * @return an independent copy of this state, without undo history.
+     */
+    PentagoSearchState copy();
+}
@@ -0,0 +1,62 @@
+package pentago_twist;
+
+/**
+ * Immutable, compact copy of a PentagoBoardState: both occupancy masks, the turn player, the turn number and the
+ * winner in two longs and an int, with value equality. Unlike a board state it carries no random source or move
+ * history, so it can be used as a map key and stored in bulk in caches, opening books and datasets.
+ * @author Samuel Morris (dodobird)
+ */
+public final class PentagoSnapshot {
+    private static final int BOARD_BITS = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE;
+    private static final long BOARD_MASK = (1L << BOARD_BITS) - 1;
+
+    private final long white; // White's mask, with the turn number above it
+    private final long black; // Black's mask, with the turn player and then the rules above it
+    private final int winner;
+
+    PentagoSnapshot(PentagoBoardState.Rules rules, long whiteMask, long blackMask, int turnPlayer, int turnNumber, int winner) {
+        this.white = whiteMask | (long) turnNumber << BOARD_BITS;
+        this.black = blackMask | (long) turnPlayer << BOARD_BITS | (long) rules.ordinal() << (BOARD_BITS + 1);
+        this.winner = winner;
+    }
+
+    public long getWhiteMask() { return white & BOARD_MASK; }
+
+    public long getBlackMask() { return black & BOARD_MASK; }
+
+    public int getTurnNumber() { return (int) (white >>> BOARD_BITS); }
+
+    public int getTurnPlayer() { return (int) (black >>> BOARD_BITS) & 1; }
+
+    public PentagoBoardState.Rules getRules() { return PentagoBoardState.Rules.values()[(int) (black >>> (BOARD_BITS + 1))]; }
+
+    public int getWinner() { return winner; }
+
+    /**
+     * @return a new board state in this position, using the calling thread's random stream.
+     */
+    public PentagoBoardState toBoardState() {
+        return new PentagoBoardState(getRules(), getWhiteMask(), getBlackMask(), getTurnPlayer(), getTurnNumber(), winner);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PentagoSnapshot)) return false;
+        PentagoSnapshot s = (PentagoSnapshot) o;
+        return white == s.white && black == s.black && winner == s.winner;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = white * 0x9E3779B97F4A7C15L + black; // Multiply-xorshift mix so nearby masks spread over the table
+        h = (h ^ (h >>> 32)) * 0xD6E8FEB86659FD93L + winner;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PentagoSnapshot(rules=%s, white=%09x, black=%09x, turnPlayer=%d, turnNumber=%d, winner=%d)",
+                getRules(), getWhiteMask(), getBlackMask(), getTurnPlayer(), getTurnNumber(), winner);
+    }
+}
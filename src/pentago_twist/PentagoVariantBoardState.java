@@ -0,0 +1,453 @@
+package pentago_twist;
+
+import boardgame.Board;
+import boardgame.BoardState;
+import boardgame.Move;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Pentago-Twist on an N x N board split into K x K quadrants, e.g. 9x9 with nine 3x3 quadrants or 8x8 with four
+ * 4x4 quadrants, for stress-testing searches where the branching factor explodes. The rules are those of
+ * PentagoBoardState: place a piece, then rotate a quadrant 90 degrees clockwise (op 0) or flip it left-to-right
+ * (op 1), and a line of winLength wins. With a 6x6 board, 3x3 quadrants and lines of 5 it plays exactly like
+ * PentagoBoardState.
+ *
+ * Each player's pieces are a multi-word bitboard, bit (x * boardSize + y) of the long[] being set for a piece at
+ * (x, y). Moves are encoded as square * numTwists + quad * 2 + op. Clones share the precomputed geometry.
+ *
+ * Note: First player white, second player black!!
+ * @author Samuel Morris (dodobird)
+ */
+public class PentagoVariantBoardState extends BoardState implements PentagoSearchState {
+    public static final int DEFAULT_WIN_LENGTH = 5;
+    private static final int FIRST_PLAYER = 0;
+    private static final int MAX_QUAD_SIZE = 8; // A quadrant is read into a single long while twisting
+    private static final long ZOBRIST_SEED = 424L;
+    private static final ThreadLocal<SplittableRandom> THREAD_RANDOM = ThreadLocal.withInitial(SplittableRandom::new);
+
+    private final Geometry geometry;
+    private final long[] white;
+    private final long[] black;
+    private long hash;
+    private int numPieces;
+    private int turnPlayer;
+    private int turnNumber;
+    private int winner;
+    private SplittableRandom rand; // Caller-supplied random source, or null to use the calling thread's own stream
+    private int[] winnerHistory; // Winner before each processed move, allocated on first use
+    private int historySize;
+
+    public PentagoVariantBoardState(int boardSize, int quadSize) {
+        this(boardSize, quadSize, DEFAULT_WIN_LENGTH);
+    }
+
+    public PentagoVariantBoardState(int boardSize, int quadSize, int winLength) {
+        super();
+        if (quadSize < 2 || quadSize > MAX_QUAD_SIZE || boardSize % quadSize != 0 || winLength < 2 || winLength > boardSize) {
+            throw new IllegalArgumentException("Unsupported variant: board " + boardSize + ", quadrant " + quadSize + ", line " + winLength);
+        }
+        geometry = new Geometry(boardSize, quadSize, winLength);
+        white = new long[geometry.numWords];
+        black = new long[geometry.numWords];
+        hash = 0L;
+        numPieces = 0;
+
+        rand = null;
+        winner = Board.NOBODY;
+        turnPlayer = FIRST_PLAYER;
+        turnNumber = 0;
+    }
+
+    // For cloning
+    private PentagoVariantBoardState(PentagoVariantBoardState pbs) {
+        super();
+        geometry = pbs.geometry;
+        white = pbs.white.clone();
+        black = pbs.black.clone();
+        hash = pbs.hash;
+        numPieces = pbs.numPieces;
+
+        rand = pbs.rand;
+        winner = pbs.winner;
+        turnPlayer = pbs.turnPlayer;
+        turnNumber = pbs.turnNumber;
+    }
+
+    public int getBoardSize() { return geometry.boardSize; }
+
+    public int getQuadSize() { return geometry.quadSize; }
+
+    public int getNumQuads() { return geometry.numQuads; }
+
+    public int getWinLength() { return geometry.winLength; }
+
+    public int getMaxTurns() { return geometry.maxTurns; }
+
+    @Override
+    public Object clone() {
+        return new PentagoVariantBoardState(this);
+    }
+
+    @Override
+    public PentagoSearchState copy() {
+        return new PentagoVariantBoardState(this);
+    }
+
+    @Override
+    public int getWinner() { return winner; }
+
+    @Override
+    public void setWinner(int win) { winner = win; }
+
+    @Override
+    public int getTurnPlayer() { return turnPlayer; }
+
+    @Override
+    public int getTurnNumber() { return turnNumber; }
+
+    @Override
+    public boolean isInitialized() { return true; }
+
+    @Override
+    public int firstPlayer() { return FIRST_PLAYER; }
+
+    @Override
+    public boolean gameOver() {
+        return ((turnNumber >= geometry.maxTurns - 1) && turnPlayer == PentagoBoardState.BLACK)
+                || numPieces == geometry.numCells || winner != Board.NOBODY;
+    }
+
+    @Override
+    public long getHash() { return hash; }
+
+    @Override
+    public void setRandom(SplittableRandom rand) { this.rand = rand; }
+
+    @Override
+    public SplittableRandom getRandom() { return rand != null ? rand : THREAD_RANDOM.get(); }
+
+    @Override
+    public int getMaxMoves() { return geometry.maxMoves; }
+
+    @Override
+    public Move getRandomMove() {
+        return toMove(getRandomEncodedMove());
+    }
+
+    public PentagoBoardState.Piece getPieceAt(int xPos, int yPos) {
+        if (xPos < 0 || xPos >= geometry.boardSize || yPos < 0 || yPos >= geometry.boardSize) {
+            throw new IllegalArgumentException("Out of range");
+        }
+        int cell = xPos * geometry.boardSize + yPos;
+        if (isSet(white, cell)) { return PentagoBoardState.Piece.WHITE; }
+        if (isSet(black, cell)) { return PentagoBoardState.Piece.BLACK; }
+        return PentagoBoardState.Piece.EMPTY;
+    }
+
+    public ArrayList<PentagoMove> getAllLegalMoves() {
+        int[] moves = new int[geometry.maxMoves];
+        int count = getAllLegalMoves(moves);
+        ArrayList<PentagoMove> legalMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legalMoves.add(toMove(moves[i]));
+        }
+        return legalMoves;
+    }
+
+    @Override
+    public int getAllLegalMoves(int[] moves) {
+        int numTwists = geometry.numTwists;
+        int count = 0;
+        for (int w = 0; w < geometry.numWords; w++) {
+            long empty = ~(white[w] | black[w]) & geometry.wordMask(w);
+            while (empty != 0) {
+                int first = ((w << 6) + Long.numberOfTrailingZeros(empty)) * numTwists;
+                for (int k = 0; k < numTwists; k++) {
+                    moves[count++] = first + k;
+                }
+                empty &= empty - 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getRandomEncodedMove() {
+        int numTwists = geometry.numTwists;
+        int draw = getRandom().nextInt((geometry.numCells - numPieces) * numTwists);
+        int n = draw / numTwists;
+        for (int w = 0; w < geometry.numWords; w++) {
+            long empty = ~(white[w] | black[w]) & geometry.wordMask(w);
+            int count = Long.bitCount(empty);
+            if (n < count) {
+                return ((w << 6) + PentagoBoardState.selectBit(empty, n)) * numTwists + draw % numTwists;
+            }
+            n -= count;
+        }
+        throw new IllegalStateException("No legal move.");
+    }
+
+    /**
+     * @return a PentagoMove for an encoded move of the turn player. It carries the variant's coordinates and
+     * quadrant index, so only its transportable form is meaningful outside this class.
+     */
+    @Override
+    public PentagoMove toMove(int move) {
+        int square = move / geometry.numTwists;
+        int twist = move % geometry.numTwists;
+        return new PentagoMove(square / geometry.boardSize, square % geometry.boardSize, twist >>> 1, twist & 1, turnPlayer);
+    }
+
+    public int encodeMove(int x, int y, int quad, int op) {
+        return (x * geometry.boardSize + y) * geometry.numTwists + quad * 2 + op;
+    }
+
+    public boolean isLegal(PentagoMove m) {
+        int x = m.getXMove();
+        int y = m.getYMove();
+        if (m.getASwap() < 0 || m.getASwap() >= geometry.numQuads || m.getBSwap() < 0 || m.getBSwap() >= 2) { return false; }
+        if (x < 0 || x >= geometry.boardSize || y < 0 || y >= geometry.boardSize) { return false; }
+        if (turnPlayer != m.getPlayerID()) { return false; }
+        int cell = x * geometry.boardSize + y;
+        return !isSet(white, cell) && !isSet(black, cell);
+    }
+
+    public void processMove(PentagoMove m) throws IllegalArgumentException {
+        if (!isLegal(m)) { throw new IllegalArgumentException("Invalid move. Move: " + m.toPrettyString()); }
+        applyMove(m.getXMove() * geometry.boardSize + m.getYMove(), m.getASwap(), m.getBSwap());
+    }
+
+    @Override
+    public void processMove(int move) throws IllegalArgumentException {
+        int cell = move / geometry.numTwists;
+        if (move < 0 || move >= geometry.maxMoves || isSet(white, cell) || isSet(black, cell)) {
+            throw new IllegalArgumentException("Invalid move. Move: " + move);
+        }
+        int twist = move % geometry.numTwists;
+        applyMove(cell, twist >>> 1, twist & 1);
+    }
+
+    private void applyMove(int cell, int quad, int op) {
+        if (winnerHistory == null) {
+            winnerHistory = new int[geometry.numCells]; // Each move fills a square, so this is the maximum depth
+        }
+        winnerHistory[historySize++] = winner;
+        setCell(turnPlayer == PentagoBoardState.WHITE ? white : black, cell, turnPlayer);
+        numPieces++;
+        twist(quad, geometry.twistTargets[op]);
+        updateWinner();
+        if (turnPlayer != FIRST_PLAYER) { turnNumber += 1; } // Update the turn number if needed
+        turnPlayer = 1 - turnPlayer; // Swap player
+    }
+
+    @Override
+    public void undoMove(int move) throws IllegalArgumentException {
+        if (move < 0 || move >= geometry.maxMoves) {
+            throw new IllegalArgumentException("Undo of a move that was not played last. Move: " + move);
+        }
+        if (historySize == 0) { throw new IllegalStateException("No move to undo."); }
+        int cell = move / geometry.numTwists;
+        int twist = move % geometry.numTwists;
+        int prevPlayer = 1 - turnPlayer;
+        int quad = twist >>> 1;
+        twist(quad, geometry.untwistTargets[twist & 1]);
+        long[] prevMask = prevPlayer == PentagoBoardState.WHITE ? white : black;
+        if (!isSet(prevMask, cell)) {
+            twist(quad, geometry.twistTargets[twist & 1]); // Put the board back before complaining
+            throw new IllegalArgumentException("Undo of a move that was not played last. Move: " + move);
+        }
+        clearCell(prevMask, cell, prevPlayer);
+        numPieces--;
+        turnPlayer = prevPlayer;
+        if (turnPlayer != FIRST_PLAYER) { turnNumber -= 1; }
+        winner = winnerHistory[--historySize];
+    }
+
+    /**
+     * Moves every piece of the quadrant from local index i to local index targets[i], updating the hash.
+     */
+    private void twist(int quad, int[] targets) {
+        int[] cells = geometry.quadCells[quad];
+        twistMask(white, cells, targets, PentagoBoardState.WHITE);
+        twistMask(black, cells, targets, PentagoBoardState.BLACK);
+    }
+
+    private void twistMask(long[] mask, int[] cells, int[] targets, int player) {
+        long local = 0L;
+        for (int i = 0; i < cells.length; i++) {
+            if (isSet(mask, cells[i])) {
+                local |= 1L << i;
+                clearCell(mask, cells[i], player);
+            }
+        }
+        while (local != 0) {
+            setCell(mask, cells[targets[Long.numberOfTrailingZeros(local)]], player);
+            local &= local - 1;
+        }
+    }
+
+    private void setCell(long[] mask, int cell, int player) {
+        mask[cell >>> 6] |= 1L << cell;
+        hash ^= geometry.zobrist[player * geometry.numCells + cell];
+    }
+
+    private void clearCell(long[] mask, int cell, int player) {
+        mask[cell >>> 6] &= ~(1L << cell);
+        hash ^= geometry.zobrist[player * geometry.numCells + cell];
+    }
+
+    private static boolean isSet(long[] mask, int cell) {
+        return (mask[cell >>> 6] >>> cell & 1L) != 0;
+    }
+
+    private void updateWinner() {
+        boolean playerWin = checkWin(turnPlayer);
+        int otherPlayer = 1 - turnPlayer;
+        boolean otherWin = checkWin(otherPlayer);
+        if (playerWin) { // Current player has won
+            winner = otherWin ? Board.DRAW : turnPlayer;
+        } else if (otherWin) { // Player's move caused the opponent to win
+            winner = otherPlayer;
+        } else if (gameOver()) {
+            winner = Board.DRAW;
+        }
+    }
+
+    private boolean checkWin(int player) {
+        long[] mask = player == PentagoBoardState.WHITE ? white : black;
+        long[] lines = geometry.lines;
+        int numWords = geometry.numWords;
+        for (int start = 0; start < lines.length; start += numWords) {
+            boolean full = true;
+            for (int w = 0; w < numWords && full; w++) {
+                full = (mask[w] & lines[start + w]) == lines[start + w];
+            }
+            if (full) { return true; }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder boardString = new StringBuilder();
+        int size = geometry.boardSize;
+        int quadSize = geometry.quadSize;
+        StringBuilder rowMarker = new StringBuilder();
+        for (int j = 0; j < size * 4 + size / quadSize; j++) {
+            rowMarker.append('-');
+        }
+        rowMarker.append('\n');
+        boardString.append(rowMarker);
+        for (int i = 0; i < size; i++) {
+            boardString.append("|");
+            for (int j = 0; j < size; j++) {
+                boardString.append(" ");
+                boardString.append(getPieceAt(i, j).toString());
+                boardString.append(" |");
+                if (j % quadSize == quadSize - 1 && j != size - 1) {
+                    boardString.append("|");
+                }
+            }
+            boardString.append("\n");
+            if (i % quadSize == quadSize - 1) {
+                boardString.append(rowMarker);
+            }
+        }
+        return boardString.toString();
+    }
+
+    /**
+     * Precomputed tables for one board size, quadrant size and line length, shared by all clones of a state.
+     */
+    private static final class Geometry {
+        final int boardSize;
+        final int quadSize;
+        final int winLength;
+        final int numQuads;
+        final int numCells;
+        final int numWords;
+        final int numTwists;
+        final int maxMoves;
+        final int maxTurns;
+        final int[][] quadCells; // [quad] -> board cells of the quadrant, row-major
+        final int[][] twistTargets; // [op] -> local index each local index moves to
+        final int[][] untwistTargets; // [op] -> inverse of twistTargets
+        final long[] lines; // numWords words per line of winLength squares
+        final long[] zobrist; // [player * numCells + cell]
+
+        Geometry(int boardSize, int quadSize, int winLength) {
+            this.boardSize = boardSize;
+            this.quadSize = quadSize;
+            this.winLength = winLength;
+            int quadsPerSide = boardSize / quadSize;
+            numQuads = quadsPerSide * quadsPerSide;
+            numCells = boardSize * boardSize;
+            numWords = (numCells + 63) >>> 6;
+            numTwists = numQuads * 2;
+            maxMoves = numCells * numTwists;
+            maxTurns = (numCells + 1) / 2;
+
+            quadCells = new int[numQuads][quadSize * quadSize];
+            for (int q = 0; q < numQuads; q++) {
+                int xOrigin = (q / quadsPerSide) * quadSize;
+                int yOrigin = (q % quadsPerSide) * quadSize;
+                for (int i = 0; i < quadSize; i++) {
+                    for (int j = 0; j < quadSize; j++) {
+                        quadCells[q][i * quadSize + j] = (xOrigin + i) * boardSize + yOrigin + j;
+                    }
+                }
+            }
+
+            twistTargets = new int[2][quadSize * quadSize];
+            untwistTargets = new int[2][quadSize * quadSize];
+            for (int i = 0; i < quadSize; i++) {
+                for (int j = 0; j < quadSize; j++) {
+                    int from = i * quadSize + j;
+                    twistTargets[0][from] = j * quadSize + quadSize - 1 - i; // rotate 90 right: (i, j) -> (j, k - 1 - i)
+                    twistTargets[1][from] = i * quadSize + quadSize - 1 - j; // flip: (i, j) -> (i, k - 1 - j)
+                }
+            }
+            for (int op = 0; op < 2; op++) {
+                for (int from = 0; from < quadSize * quadSize; from++) {
+                    untwistTargets[op][twistTargets[op][from]] = from;
+                }
+            }
+
+            int[][] directions = { {0, 1}, {1, 0}, {1, 1}, {1, -1} };
+            ArrayList<long[]> lineList = new ArrayList<>();
+            for (int[] dir : directions) {
+                for (int i = 0; i < boardSize; i++) {
+                    for (int j = 0; j < boardSize; j++) {
+                        int endX = i + (winLength - 1) * dir[0];
+                        int endY = j + (winLength - 1) * dir[1];
+                        if (endX < 0 || endX >= boardSize || endY < 0 || endY >= boardSize) { continue; }
+                        long[] line = new long[numWords];
+                        for (int k = 0; k < winLength; k++) {
+                            int cell = (i + k * dir[0]) * boardSize + j + k * dir[1];
+                            line[cell >>> 6] |= 1L << cell;
+                        }
+                        lineList.add(line);
+                    }
+                }
+            }
+            lines = new long[lineList.size() * numWords];
+            for (int l = 0; l < lineList.size(); l++) {
+                System.arraycopy(lineList.get(l), 0, lines, l * numWords, numWords);
+            }
+
+            Random keys = new Random(ZOBRIST_SEED); // Fixed seed so keys are stable across runs
+            zobrist = new long[2 * numCells];
+            for (int k = 0; k < zobrist.length; k++) {
+                zobrist[k] = keys.nextLong();
+            }
+        }
+
+        long wordMask(int word) {
+            int bits = Math.min(64, numCells - (word << 6));
+            return bits == 64 ? -1L : (1L << bits) - 1;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package student_player;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A SearchTree that several threads search at once, without locks. The visits and wins of a node are packed into
+ * one long, visits in the high half and wins in the low half, so both change together with a single atomic add and
+ * a reader never sees one without the other. Only additions are made, so the halves never borrow from each other.
+ *
+ * A node is expanded by the thread that moves its first child index from NOT_EXPANDED to EXPANDING with a CAS. That
+ * thread allocates and fills in the children and then publishes the index; the others see EXPANDING or the index and
+ * never expand the node themselves. Node indices are handed out by a CAS on the size, and pages are installed with a
+ * CAS as well, so the only waiting is on failed CASes.
+ *
+ * The moves and child counts are plain arrays: they are written before the first child index is published and read
+ * after it has been seen, so the volatile write and read of that index order them. getVisits and getWins each read
+ * a consistent pair, but two calls can fall on either side of an update; selection only uses them as estimates, and
+ * the visits seen include the virtual losses of the searches still running below a node.
+ * @author Samuel Morris (dodobird)
+ */
+class ConcurrentSearchTree implements MonteCarloTree {
+
+	private static final int NOT_EXPANDED = -1;
+	private static final int EXPANDING = -2; // Claimed by a thread that is adding the children
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final long WINS_MASK = 0xFFFFFFFFL;
+
+	/**
+	 * The nodes of one page, allocated together.
+	 */
+	private static final class Page {
+		final AtomicLongArray statistics = new AtomicLongArray(PAGE_SIZE); // Visits << 32 | wins
+		final short[] moves = new short[PAGE_SIZE];
+		final AtomicIntegerArray firstChild = new AtomicIntegerArray(PAGE_SIZE);
+		final short[] childCount = new short[PAGE_SIZE];
+	}
+
+	private final int maxNodes;
+	private final AtomicReferenceArray<Page> pages;
+	private final AtomicInteger size = new AtomicInteger();
+
+	public ConcurrentSearchTree(int maxNodes) {
+		this.maxNodes = maxNodes;
+		pages = new AtomicReferenceArray<>((maxNodes + PAGE_SIZE - 1) >>> PAGE_BITS);
+		clear();
+	}
+
+	/**
+	 * Removes every node but a fresh root, keeping the allocated pages for reuse. Not safe while searching.
+	 */
+	public void clear() {
+		size.set(0);
+		allocate(1);
+		page(ROOT).moves[0] = -1; // root contains null-move
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	private Page page(int node) {
+		return pages.get(node >>> PAGE_BITS);
+	}
+
+	@Override
+	public int getVisits(int node) {
+		return (int) (page(node).statistics.get(node & PAGE_MASK) >>> 32);
+	}
+
+	@Override
+	public int getWins(int node) {
+		return (int) (page(node).statistics.get(node & PAGE_MASK) & WINS_MASK);
+	}
+
+	@Override
+	public int getMove(int node) {
+		return page(node).moves[node & PAGE_MASK];
+	}
+
+	/**
+	 * @return the index of the first child, NOT_EXPANDED, or EXPANDING while another thread adds the children.
+	 */
+	@Override
+	public int getFirstChild(int node) {
+		return page(node).firstChild.get(node & PAGE_MASK);
+	}
+
+	/**
+	 * @return the number of children of an expanded node. Only valid once isExpanded has returned true.
+	 */
+	@Override
+	public int getChildCount(int node) {
+		return page(node).childCount[node & PAGE_MASK];
+	}
+
+	/**
+	 * @return True if the children of the node have been published, even if there were none to add.
+	 */
+	@Override
+	public boolean isExpanded(int node) {
+		return getFirstChild(node) >= 0;
+	}
+
+	/**
+	 * Adds some visits and wins to a node at once.
+	 * @return the visits the node had before.
+	 */
+	@Override
+	public int update(int node, int games, int won) {
+		return (int) (page(node).statistics.getAndAdd(node & PAGE_MASK, (long) games << 32 | won) >>> 32);
+	}
+
+	/**
+	 * Claims an unexpanded node for the calling thread and adds one child per move to it.
+	 * @return False, leaving the node as it was, if another thread has claimed it or the tree has no room.
+	 */
+	@Override
+	public boolean expand(int node, int[] childMoves, int count) {
+		Page parent = page(node);
+		int index = node & PAGE_MASK;
+		if (!parent.firstChild.compareAndSet(index, NOT_EXPANDED, EXPANDING)) {
+			return false;
+		}
+		int first = allocate(count);
+		if (first < 0) {
+			parent.firstChild.set(index, NOT_EXPANDED);
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			int child = first + i;
+			page(child).moves[child & PAGE_MASK] = (short) childMoves[i];
+		}
+		parent.childCount[index] = (short) count;
+		parent.firstChild.set(index, first); // Publishes the children
+		return true;
+	}
+
+	/**
+	 * Checks that every node but the root is the child of exactly one node, that no node is left mid-expansion and
+	 * that no node has more wins than visits. Only meaningful while no thread is searching.
+	 * @return a description of the first problem found, or null if there is none.
+	 */
+	String checkStructure() {
+		int[] parents = new int[size()];
+		parents[ROOT] = 1;
+		for (int node = 0; node < parents.length; node++) {
+			int first = getFirstChild(node);
+			if (first == EXPANDING) {
+				return "node " + node + " was left mid-expansion";
+			}
+			if (getWins(node) > getVisits(node)) {
+				return "node " + node + " has more wins than visits";
+			}
+			if (first == NOT_EXPANDED) {
+				continue;
+			}
+			for (int child = first; child < first + getChildCount(node); child++) {
+				if (child >= parents.length) {
+					return "node " + node + " has child " + child + " beyond the tree";
+				}
+				parents[child]++;
+			}
+		}
+		for (int node = 0; node < parents.length; node++) {
+			if (parents[node] != 1) {
+				return "node " + node + " has " + parents[node] + " parents";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reserves count consecutive fresh nodes, installing pages as needed.
+	 * @return the index of the first one, or -1 if the tree is full.
+	 */
+	private int allocate(int count) {
+		int first;
+		do {
+			first = size.get();
+			if (count > maxNodes - first) {
+				return -1;
+			}
+		} while (!size.compareAndSet(first, first + count));
+		int end = first + count;
+		for (int page = first >>> PAGE_BITS; page <= (end - 1) >>> PAGE_BITS; page++) {
+			if (pages.get(page) == null) {
+				pages.compareAndSet(page, null, new Page()); // The loser's page is dropped
+			}
+		}
+		for (int node = first; node < end; node++) {
+			Page page = page(node);
+			int index = node & PAGE_MASK;
+			page.statistics.set(index, 0);
+			page.childCount[index] = 0;
+			page.firstChild.set(index, NOT_EXPANDED);
+		}
+		return first;
+	}
+}
@@ -0,0 +1,90 @@
+package student_player;
+
+/**
+ * The nodes of a Monte Carlo search tree as a SearchWorker sees them, so the same iterations run on a SearchTree
+ * and on a ConcurrentSearchTree. The statistics of a node count the games won by the player who made the move
+ * leading to it, which is the player choosing among it and its siblings during selection. Node 0 is the root.
+ * @author Samuel Morris (dodobird)
+ */
+interface MonteCarloTree {
+
+	int ROOT = 0;
+
+	/**
+	 * @return the number of nodes in the tree.
+	 */
+	int size();
+
+	int getMaxNodes();
+
+	int getVisits(int node);
+
+	int getWins(int node);
+
+	/**
+	 * @return the encoded move leading to the node, see PentagoBoardState.getAllLegalMoves(int[]).
+	 */
+	int getMove(int node);
+
+	int getFirstChild(int node);
+
+	/**
+	 * @return the number of children of a node for which isExpanded has returned true.
+	 */
+	int getChildCount(int node);
+
+	/**
+	 * @return True if children have been added to the node, even if there were none to add.
+	 */
+	boolean isExpanded(int node);
+
+	/**
+	 * Adds some visits and wins to a node.
+	 * @return the visits the node had before.
+	 */
+	int update(int node, int games, int won);
+
+	/**
+	 * Adds one child per move to an unexpanded node.
+	 * @return False, leaving the node unexpanded, if the children could not be added.
+	 */
+	boolean expand(int node, int[] childMoves, int count);
+
+	/**
+	 * @return the child of an expanded node with the highest UCB, or the first unvisited child if there is one.
+	 */
+	default int selectByUCB(int node) {
+		int first = getFirstChild(node);
+		int end = first + getChildCount(node);
+		double logVisits = Math.log(Math.max(1, getVisits(node)));
+		double maxUCB = Double.NEGATIVE_INFINITY;
+		int maxChild = first;
+		for (int child = first; child < end; child++) {
+			int childVisits = getVisits(child);
+			if (childVisits == 0) {
+				return child;
+			}
+			double childUCB = (double) getWins(child) / childVisits + Math.sqrt(2 * logVisits / childVisits);
+			if (childUCB > maxUCB) {
+				maxUCB = childUCB;
+				maxChild = child;
+			}
+		}
+		return maxChild;
+	}
+
+	/**
+	 * @return the most visited child of an expanded node with children.
+	 */
+	default int mostVisitedChild(int node) {
+		int first = getFirstChild(node);
+		int end = first + getChildCount(node);
+		int best = first;
+		for (int child = first + 1; child < end; child++) {
+			if (getVisits(child) > getVisits(best)) {
+				best = child;
+			}
+		}
+		return best;
+	}
+}
@@ -8,6 +8,7 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import boardgame.Move;
+import pentago_twist.PentagoBatchRollout;
 import pentago_twist.PentagoBoardState;
 import pentago_twist.PentagoBoardState.Piece;
 import pentago_twist.PentagoCoord;
@@ -17,6 +18,13 @@ public class MyTools {
 	
 	private static final int MOVE_TIME_LIMIT = 1800; // 2 second time limit minus a buffer of 200 ms for the rest of the code to terminate
 	
+	// Reusable per-thread buffers of encoded moves, so expansions don't allocate move lists
+	private static final ThreadLocal<int[]> MOVE_BUFFER = ThreadLocal.withInitial(() -> new int[PentagoBoardState.MAX_MOVES]);
+	private static final ThreadLocal<int[]> LOSING_MOVE_BUFFER = ThreadLocal.withInitial(() -> new int[PentagoBoardState.MAX_MOVES]);
+	
+	// Per-thread engine playing the random games from each leaf in lockstep
+	private static final ThreadLocal<PentagoBatchRollout> ROLLOUT_BATCH = ThreadLocal.withInitial(() -> new PentagoBatchRollout(SearchWorker.ROLLOUTS_PER_LEAF));
+	
 	/**
 	 * Performs a Monte Carlo Tree Search, starting from the given boardState.
 	 * @param boardState is the board state to start the MCTS from.
@@ -28,18 +36,13 @@ public class MyTools {
 		int startTime = (int) System.currentTimeMillis();
 		
 		NodeBoard rootBoard = new NodeBoard(board, null); // root contains null-move
-		Tree<String, NodeBoard> tree = new Tree<String, NodeBoard>(rootBoard); // Init search tree
-		Node<String, NodeBoard> currentNode = tree.root; // Set initial node to root
+		Tree<Integer, NodeBoard> tree = new Tree<Integer, NodeBoard>(rootBoard); // Init search tree
+		Node<Integer, NodeBoard> currentNode = tree.root; // Set initial node to root
 		
 		// Immediately check to see if a winning move exists
-		ArrayList<PentagoMove> moves = currentNode.data.board.getAllLegalMoves();
-		int AI_PLAYER_NUMBER = currentNode.data.board.getTurnPlayer();
-		for(PentagoMove move : moves) {
-			PentagoBoardState newClone = (PentagoBoardState) currentNode.data.board.clone();
-			newClone.processMove(move);
-			if (newClone.getWinner() == AI_PLAYER_NUMBER) {
-				return move; //return if a winning move exists
-			}
+		int winningMove = findWinningMove(board);
+		if (winningMove >= 0) {
+			return board.toMove(winningMove); //return if a winning move exists
 		}
 		
 		// Generate children for the root node prior to starting search
@@ -64,7 +67,7 @@ public class MyTools {
 					generateChildren(currentNode);
 					
 					// Perform a rollout on the first child of the former leaf node
-					Optional<Node<String, NodeBoard>> firstChildOpt = currentNode.childMap().values().stream().findFirst();
+					Optional<Node<Integer, NodeBoard>> firstChildOpt = currentNode.childMap().values().stream().findFirst();
 					firstChildOpt.ifPresent(firstChild -> {
 						rolloutWithUpdate(firstChild);
 					});
@@ -75,12 +78,12 @@ public class MyTools {
 			{
 				// Use the "Tree Policy" to navigate towards a leaf node.
 				double maxUCB = 0;
-				Node<String, NodeBoard> maxChild = currentNode.childMap().values().stream().findFirst().orElseThrow();
-				HashMap<String, Node<String, NodeBoard>> children = currentNode.childMap();
+				Node<Integer, NodeBoard> maxChild = currentNode.childMap().values().stream().findFirst().orElseThrow();
+				HashMap<Integer, Node<Integer, NodeBoard>> children = currentNode.childMap();
 				
 				//System.out.println("Calculating the UCB for all child nodes...");
 				// Iterate through the current node's children to calculate their UCBs
-				for(Node<String, NodeBoard> child : children.values()) {
+				for(Node<Integer, NodeBoard> child : children.values()) {
 					
 					//System.out.println("Visit count for UCB calculation: " + child.data.visitCount);
 					//System.out.println("Win count for UCB calculation: " + child.data.winCount);
@@ -106,7 +109,7 @@ public class MyTools {
 		}// POST SEARCH
 		
 		// Find the node with the highest win rate
-		ArrayList<Node<String, NodeBoard>> rootChildrenList = new ArrayList<>(tree.root.childMap().values());
+		ArrayList<Node<Integer, NodeBoard>> rootChildrenList = new ArrayList<>(tree.root.childMap().values());
 		rootChildrenList.sort(NodeBoard.byHighestWinrate());
 		Move bestMove = rootChildrenList.get(0).data.move;
 		
@@ -128,24 +131,48 @@ public class MyTools {
 		return bestMove;
 	}
 	
+	/**
+	 * @return the encoded winning move with the smallest code for the turn player, or -1 if there is none.
+	 */
+	public static int findWinningMove(PentagoBoardState board) {
+		return findWinningMove(board, new long[PentagoBoardState.NUM_TWISTS]);
+	}
+
+	/**
+	 * Allocation-free version of findWinningMove for searches that call it every turn.
+	 * @param winSquares is scratch with room for NUM_TWISTS entries.
+	 */
+	public static int findWinningMove(PentagoBoardState board, long[] winSquares) {
+		if (!board.getDecisiveMoves(winSquares, null)) {
+			return -1;
+		}
+		int winningMove = Integer.MAX_VALUE;
+		for (int twist = 0; twist < PentagoBoardState.NUM_TWISTS; twist++) {
+			if (winSquares[twist] != 0) {
+				winningMove = Math.min(winningMove, Long.numberOfTrailingZeros(winSquares[twist]) << 3 | twist);
+			}
+		}
+		return winningMove;
+	}
+	
 	/**
 	 * Generates children for the current node. If the current node is the root, then 
 	 * initilizes the children using RootNodeBoard instead of NodeBoard.
 	 * @param currentNode is the node to generate children for.
 	 */
-	public static void generateChildren(Node<String, NodeBoard> currentNode) {
+	public static void generateChildren(Node<Integer, NodeBoard> currentNode) {
 		
 		// Generate children if the leaf node has been visited before
-		for(PentagoMove move : currentNode.data.board.getAllLegalMoves())
+		PentagoBoardState board = currentNode.data.board;
+		int[] moves = MOVE_BUFFER.get();
+		int numMoves = SearchWorker.childMoves(board, moves, LOSING_MOVE_BUFFER.get()); // distinct, non-losing moves
+		for(int i = 0; i < numMoves; i++)
 		{
 			numChildrenCreated++;
-			PentagoBoardState newBoard = (PentagoBoardState) currentNode.data.board.clone();
-			newBoard.processMove(move); // Apply move to cloned board
-			
-			NodeBoard possibleChild = new NodeBoard(newBoard, move);
-			//if (filterBoardsByTouching().test(possibleChild)) {
-				currentNode.addChild(move.toPrettyString(), possibleChild);// Add child to Monte Carlo Tree
-			//}
+			PentagoMove move = board.toMove(moves[i]);
+			PentagoBoardState newBoard = (PentagoBoardState) board.clone();
+			newBoard.processMove(moves[i]); // Apply move to cloned board
+			currentNode.addChild(move.toInt(board.getRules()), new NodeBoard(newBoard, move));// Add child to Monte Carlo Tree
 		}
 		//System.out.println("Legal moves size: " + currentNode.data.board.getAllLegalMoves().size());
 		//System.out.println("Filtered moves size: " + currentNode.childMap().size());
@@ -156,11 +183,12 @@ public class MyTools {
 	 * the currentNode and each of its parents.
 	 * @param currentNode is the node that the rollout is performed on.
 	 */
-	public static void rolloutWithUpdate(Node<String, NodeBoard> currentNode) {
+	public static void rolloutWithUpdate(Node<Integer, NodeBoard> currentNode) {
 		
-		numRollouts++;
-		// Perform rollout
-		int result = stochasticRollout(currentNode.data.board);
+		numRollouts += SearchWorker.ROLLOUTS_PER_LEAF;
+		// Perform a batch of rollouts, won by the player whose turn it is at this node
+		PentagoBoardState board = currentNode.data.board;
+		int result = ROLLOUT_BATCH.get().run(board, SearchWorker.ROLLOUTS_PER_LEAF, board.getTurnPlayer());
 		//System.out.println("result = " + result);
 		
 		// Update win and visit counts all the way up the tree
@@ -168,7 +196,7 @@ public class MyTools {
 		boolean isUpdating = true;
 		while(isUpdating) {
 			currentNode.data.winCount += result;
-			currentNode.data.visitCount += 1;
+			currentNode.data.visitCount += SearchWorker.ROLLOUTS_PER_LEAF;
 			//System.out.println("Wincount: " + currentNode.data.winCount);
 			//System.out.println("Visitcount: " + currentNode.data.visitCount);
 			if (currentNode.isRoot()) {
@@ -180,11 +208,11 @@ public class MyTools {
 		}
 	}
 	
-	public static void adversarialRAVE(Node<String, NodeBoard> currentNode) {
+	public static void adversarialRAVE(Node<Integer, NodeBoard> currentNode) {
 		numRollouts++;
 		
 		// Get siblings of the current node to possibly update after rollout
-		HashMap<String, Node<String, NodeBoard>> siblings = new HashMap<String, Node<String, NodeBoard>>();
+		HashMap<Integer, Node<Integer, NodeBoard>> siblings = new HashMap<Integer, Node<Integer, NodeBoard>>();
 		if (currentNode.isRoot() == false) {
 			siblings = currentNode.parent().childMap();
 		}
@@ -195,16 +223,16 @@ public class MyTools {
 		
 		// Process random moves for each player until someone wins.
 		// and keep track of the siblings whose moves were played in this rollout
-		HashMap<String, Node<String, NodeBoard>> siblingsInRollout = new HashMap<String, Node<String, NodeBoard>>();
+		HashMap<Integer, Node<Integer, NodeBoard>> siblingsInRollout = new HashMap<Integer, Node<Integer, NodeBoard>>();
 		while(currentState.gameOver() == false) {
 			
 			PentagoMove bestMove = bestMoveAccordingToEval(currentState);
 			//PentagoMove bestMove = (PentagoMove) currentState.getRandomMove();
 			
 			// If it's the AI's turn and the move key returns a sibling, add it to "siblingsInRollout"
-			Node<String, NodeBoard> siblingPlayed = siblings.get(bestMove.toPrettyString());
+			Node<Integer, NodeBoard> siblingPlayed = siblings.get(bestMove.toInt(currentState.getRules()));
 			if (siblingPlayed != null) {
-				siblingsInRollout.put(bestMove.toPrettyString(), siblingPlayed);// place the sibling
+				siblingsInRollout.put(bestMove.toInt(currentState.getRules()), siblingPlayed);// place the sibling
 				//System.out.println("Adding to Siblings In Rollout, total size is: " + siblingsInRollout.size());
 			}
 			
@@ -239,7 +267,7 @@ public class MyTools {
 		
 		// additionally update any siblings whose moves may have been played during the rollout
 		if (rolloutResult == 0) return; //optimization
-		for(Node<String, NodeBoard> sibling : siblingsInRollout.values()) {
+		for(Node<Integer, NodeBoard> sibling : siblingsInRollout.values()) {
 			sibling.data.winCount += 1;
 			sibling.data.visitCount += 1;
 		}
@@ -248,32 +276,25 @@ public class MyTools {
 	/**
 	 * Performs a single-move lookahead and ranks possible moves according to the 
 	 * board evaluation function, returning the best move.
+	 * 
+	 * boardEvaluationFn resets its streak counters on every cell, so it reduces to 2 * 9 * (36 - 2 * pieces of the
+	 * player to move). In every child that player is our opponent, whose pieces a twist only moves around, so all
+	 * children score the same and the scan keeps the first legal move. That move is returned without evaluating any.
 	 * @param state to perform the lookahead on.
 	 * @return the best move for the state according to the evaluation function (works for either player).
 	 */
 	private static PentagoMove bestMoveAccordingToEval(PentagoBoardState state) {
 		
-		int bestVal = Integer.MIN_VALUE;
-		ArrayList<PentagoMove> legalMoves = state.getAllLegalMoves();
-		if (legalMoves.size() == 0) {
+		int[] legalMoves = MOVE_BUFFER.get();
+		int numMoves = state.getAllLegalMoves(legalMoves);
+		if (numMoves == 0) {
 			throw new IllegalStateException("ERROR: bestMoveAccordingToEval has been "
 					+ "called on a PentagoBoardState which produced 0 possible"
 					+ " legal moves! This should not happen!!!");
 		}
-		PentagoMove bestMove = legalMoves.get(0);
-		for(PentagoMove move : legalMoves) {
-			PentagoBoardState clone = (PentagoBoardState) state.clone();// clone board to not affect it
-			clone.processMove(move);// process possible best move
-			
-			int cloneVal = boardEvaluationFn(clone);
-			if(cloneVal > bestVal) {
-				bestVal = cloneVal;
-				bestMove = move;
-			}
-		}
-		return bestMove;
+		return state.toMove(legalMoves[0]); // Every child has the same evaluation, see above
 	}
-
+	
 	public static Comparator<PentagoBoardState> sortByHighestEvalFunction(){
 		return new Comparator<PentagoBoardState>() {
 
@@ -361,33 +382,6 @@ public class MyTools {
 		return points;
 	}
 	
-	/**
-	 * Simulates a game rollout from a given boardState.
-	 * @param boardState the boardState to rollout from.
-	 * @return 1 if the player whose turn it was in the initial board state
-	 * won the game, 0 otherwise.
-	 */
-	private static int stochasticRollout(PentagoBoardState boardState) {
-		
-		// Deep copy of the board state so we don't affect the board state in the tree
-		PentagoBoardState currentState = (PentagoBoardState) boardState.clone();
-		
-		int AI_player_number = boardState.getTurnPlayer();
-		
-		// Process random moves for each player until someone wins.
-		while(currentState.gameOver() == false) {
-			PentagoMove randomMove = (PentagoMove) currentState.getRandomMove();
-			currentState.processMove(randomMove);
-		}
-		
-		// Return 1 if the AI agent won, 0 otherwise
-		int winner = currentState.getWinner();
-		if (winner == AI_player_number) {
-			return 1;
-		}
-		return 0;
-	}
-	
 }
 
 /**
@@ -421,11 +415,11 @@ class NodeBoard{
 	/**
 	 * A comparator that sorts MonteCarloData nodes by highest winrate first.
 	 */
-	public static Comparator<Node<String, NodeBoard>> byHighestWinrate(){
-		return new Comparator<Node<String, NodeBoard>>() {
+	public static Comparator<Node<Integer, NodeBoard>> byHighestWinrate(){
+		return new Comparator<Node<Integer, NodeBoard>>() {
 
 			@Override
-			public int compare(Node<String, NodeBoard> n1, Node<String, NodeBoard> n2) {
+			public int compare(Node<Integer, NodeBoard> n1, Node<Integer, NodeBoard> n2) {
 				
 				if (n1.data.winRate() > n2.data.winRate()) return -1;
 				else if (n1.data.winRate() < n2.data.winRate()) return 1;
@@ -0,0 +1,150 @@
+package student_player;
+
+import boardgame.Move;
+import pentago_twist.PentagoBoardState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * A search that runs on several threads: RootParallelSearch, with one tree per thread, and SharedTreeSearch, with
+ * one tree for all of them. The threads are kept in a pool between searches; the calling thread does the work of
+ * the first one. Also holds the scaling benchmark both of them run from their main methods.
+ * @author Samuel Morris (dodobird)
+ */
+public abstract class ParallelSearch {
+
+	private final int threads;
+	private final ExecutorService pool; // Runs the work of every thread but the first, or null for a single thread
+
+	protected ParallelSearch(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.threads = threads;
+		pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, task -> {
+			Thread thread = new Thread(task, "search");
+			thread.setDaemon(true); // Never keeps the client alive
+			return thread;
+		});
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Searches the given position for the time a turn allows.
+	 */
+	public Move chooseMove(PentagoBoardState boardState) {
+		return search(boardState, SearchEngine.getTimeLimit(boardState));
+	}
+
+	/**
+	 * Searches the given position on every thread.
+	 * @param boardState is the position to search from. It is not modified.
+	 * @param timeLimit is the search time in milliseconds.
+	 */
+	public abstract Move search(PentagoBoardState boardState, long timeLimit);
+
+	/**
+	 * @return the number of iterations of the last search, summed over the threads.
+	 */
+	public abstract long getIterations();
+
+	/**
+	 * Stops the threads. The search can't be used afterwards.
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs task(i) for every thread i at once, task(0) on the calling thread, and waits for all of them.
+	 */
+	protected void runOnEveryThread(IntConsumer task) {
+		List<Future<?>> results = new ArrayList<>(threads - 1);
+		for (int i = 1; i < threads; i++) {
+			int thread = i;
+			results.add(pool.submit(() -> task.accept(thread)));
+		}
+		task.accept(0);
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a search", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("A search failed", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Scaling benchmark: searches a few fixed positions with 1, 2, 4, ... threads up to the given count and prints
+	 * the iterations per second and the speedup over one thread, after a warmup run. Starts from fresh searches
+	 * every time.
+	 * @param searches creates a search with the given number of threads.
+	 */
+	static void benchmark(IntFunction<ParallelSearch> searches, int maxThreads, long timeLimit) {
+		SplittableRandom random = new SplittableRandom(1);
+		List<PentagoBoardState> positions = new ArrayList<>();
+		for (int plies : new int[] { 2, 8, 14 }) {
+			positions.add(randomPosition(random.split(), plies));
+		}
+
+		System.out.println(String.format("%d processors, %d ms per search", Runtime.getRuntime().availableProcessors(),
+				timeLimit));
+		ParallelSearch warmup = searches.apply(1); // Let the JIT compile the search first
+		for (PentagoBoardState position : positions) {
+			warmup.search(position, timeLimit);
+		}
+		warmup.shutdown();
+		double baseline = 0;
+		for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+			ParallelSearch search = searches.apply(threads);
+			long iterations = 0;
+			long elapsed = 0;
+			for (PentagoBoardState position : positions) {
+				long start = System.nanoTime();
+				search.search(position, timeLimit);
+				elapsed += System.nanoTime() - start;
+				iterations += search.getIterations();
+			}
+			search.shutdown();
+			double rate = iterations * 1e9 / elapsed;
+			if (threads == 1) {
+				baseline = rate;
+			}
+			System.out.println(String.format("threads=%d iterations/s=%.0f speedup=%.2f efficiency=%.0f%%", threads,
+					rate, rate / baseline, 100 * rate / baseline / threads));
+		}
+	}
+
+	/**
+	 * @return a position after the given number of random plies that is still open, with no winning move, so a
+	 * search from it runs the whole time.
+	 */
+	static PentagoBoardState randomPosition(SplittableRandom random, int plies) {
+		PentagoBoardState position;
+		do {
+			position = new PentagoBoardState();
+			position.setRandom(random);
+			for (int i = 0; i < plies && !position.gameOver(); i++) {
+				position.processMove(position.getRandomEncodedMove());
+			}
+		} while (position.gameOver() || MyTools.findWinningMove(position) >= 0);
+		position.setRandom(null);
+		return position;
+	}
+}
@@ -0,0 +1,150 @@
+package student_player;
+
+import boardgame.Move;
+import pentago_twist.PentagoBoardState;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Root-parallel Monte Carlo Tree Search: one SearchEngine per thread, each with its own tree and its own random
+ * stream split from a common one, searches the same position until the deadline. The visits and wins of the root
+ * children are then summed over the engines and the move is the one with the most visits in total. The engines never
+ * touch each other's trees, so the threads share nothing until the merge.
+ *
+ * The engines follow the game and ponder together, so each of them keeps its own tree between turns. With one thread
+ * this is the same search as a single SearchEngine.
+ * @author Samuel Morris (dodobird)
+ */
+public class RootParallelSearch extends ParallelSearch {
+
+	public static final String THREADS_PROPERTY = "student.threads"; // System property setting the default thread count
+
+	private final SearchEngine[] engines;
+	private final long[] visits = new long[PentagoBoardState.MAX_MOVES];
+	private final long[] wins = new long[PentagoBoardState.MAX_MOVES];
+	private final long[] winSquares = new long[PentagoBoardState.NUM_TWISTS]; // Scratch for MyTools.findWinningMove
+
+	/**
+	 * Creates a search with the thread count of the THREADS_PROPERTY system property, or one per processor.
+	 */
+	public RootParallelSearch() {
+		this(Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public RootParallelSearch(int threads) {
+		this(threads, new SplittableRandom());
+	}
+
+	/**
+	 * @param threads is the number of searches to run side by side. The tree size limit is shared between them.
+	 * @param random is split into the random streams of the searches.
+	 */
+	public RootParallelSearch(int threads, SplittableRandom random) {
+		super(threads);
+		engines = new SearchEngine[threads];
+		for (int i = 0; i < threads; i++) {
+			engines[i] = new SearchEngine(SearchTree.DEFAULT_MAX_NODES / threads);
+			engines[i].setRandom(random.split());
+		}
+	}
+
+	/**
+	 * Runs every engine from the given position for the given time and merges their root statistics.
+	 * @param boardState is the position to search from. It is not modified.
+	 * @param timeLimit is the search time in milliseconds.
+	 * @return the move with the most visits over all engines, or a winning move if one exists.
+	 */
+	@Override
+	public Move search(PentagoBoardState boardState, long timeLimit) {
+		int winningMove = MyTools.findWinningMove(boardState, winSquares);
+		if (winningMove >= 0) {
+			return boardState.toMove(winningMove);
+		}
+		runOnEveryThread(i -> engines[i].search(boardState, timeLimit));
+
+		Arrays.fill(visits, 0);
+		Arrays.fill(wins, 0);
+		for (SearchEngine engine : engines) {
+			engine.addRootStatistics(visits, wins);
+		}
+		int best = 0;
+		for (int move = 1; move < visits.length; move++) {
+			if (visits[move] > visits[best]) {
+				best = move;
+			}
+		}
+		return boardState.toMove(best);
+	}
+
+	/**
+	 * Follows a move of the game in the tree of every engine, see SearchEngine.movePlayed.
+	 */
+	public void movePlayed(PentagoBoardState boardState, Move move) {
+		for (SearchEngine engine : engines) {
+			engine.movePlayed(boardState, move);
+		}
+	}
+
+	/**
+	 * Starts every engine pondering on its own thread, see SearchEngine.startPondering.
+	 */
+	public void startPondering() {
+		for (SearchEngine engine : engines) {
+			engine.startPondering();
+		}
+	}
+
+	public void stopPondering() {
+		for (SearchEngine engine : engines) {
+			engine.stopPondering();
+		}
+	}
+
+	/**
+	 * @return the number of opponent moves that arrived while pondering. Every engine sees every move, so this is
+	 * the count of the first one.
+	 */
+	public int getPonderedMoves() {
+		return engines[0].getPonderedMoves();
+	}
+
+	/**
+	 * @return the number of ponder hits of the first engine, see SearchEngine.getPonderHits.
+	 */
+	public int getPonderHits() {
+		return engines[0].getPonderHits();
+	}
+
+	/**
+	 * @return the fraction of pondered opponent moves that were ponder hits, or 0 if there were none.
+	 */
+	public double getPonderHitRate() {
+		return engines[0].getPonderHitRate();
+	}
+
+	@Override
+	public long getIterations() {
+		long count = 0;
+		for (SearchEngine engine : engines) {
+			count += engine.getIterations();
+		}
+		return count;
+	}
+
+	@Override
+	public void shutdown() {
+		stopPondering();
+		super.shutdown();
+	}
+
+	/**
+	 * Scaling benchmark, see ParallelSearch.benchmark.
+	 * Usage: java student_player.RootParallelSearch [maxThreads] [timeLimit]
+	 */
+	public static void main(String[] args) {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		long timeLimit = args.length > 1 ? Long.parseLong(args[1]) : SearchEngine.MOVE_TIME_LIMIT;
+		benchmark(threads -> new RootParallelSearch(threads, new SplittableRandom(threads)), maxThreads, timeLimit);
+	}
+}
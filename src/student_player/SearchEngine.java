@@ -0,0 +1,247 @@
+package student_player;
+
+import boardgame.Move;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
+
+import java.util.SplittableRandom;
+
+/**
+ * Monte Carlo Tree Search over a SearchTree, run by a single SearchWorker without virtual loss.
+ *
+ * The tree is kept between turns: movePlayed re-roots it onto the child reached by each move of the game, ours and
+ * the opponent's, so the next search starts from the statistics already gathered below the current position.
+ *
+ * While the opponent thinks, startPondering keeps searching the current position on a background thread. Its root
+ * is the opponent's turn, so UCT spends the time on the replies it expects; when the reply arrives movePlayed stops
+ * the thread and re-roots onto the reply's warm subtree. The pondering predicts the reply it visited most, and a
+ * reply that matches the prediction is a ponder hit.
+ * Apart from that thread, an engine is used from a single thread.
+ * @author Samuel Morris (dodobird)
+ */
+public class SearchEngine {
+
+	public static final int MOVE_TIME_LIMIT = 1800; // 2 second time limit minus a buffer of 200 ms for the rest of the code to terminate
+	public static final int FIRST_MOVE_TIME_LIMIT = 25000;
+
+	private final SearchTree tree;
+	private final SearchWorker worker;
+	private final int[] moves = new int[PentagoBoardState.MAX_MOVES];
+	private final int[] representatives = new int[PentagoBoardState.MAX_MOVES];
+	private final long[] winSquares = new long[PentagoBoardState.NUM_TWISTS]; // Scratch for MyTools.findWinningMove
+	private PentagoBoardState board; // Position at the root between turns, also the worker's board
+	private SplittableRandom random; // Stream for the rollouts, or null for the searching thread's own
+	private int reusedVisits;
+	private Thread ponderThread; // Searching the current position while the opponent thinks, or null
+	private volatile boolean isPonderingStopped;
+	private int ponderedMoves; // Opponent moves that arrived while pondering
+	private int ponderHits; // Those that were the most visited reply when the pondering stopped
+
+	public SearchEngine() {
+		this(SearchTree.DEFAULT_MAX_NODES);
+	}
+
+	public SearchEngine(int maxNodes) {
+		tree = new SearchTree(maxNodes);
+		worker = new SearchWorker(tree, 0);
+	}
+
+	/**
+	 * @return the search time in milliseconds a turn allows in the given position.
+	 */
+	public static long getTimeLimit(PentagoBoardState boardState) {
+		return boardState.getTurnNumber() == 0 ? FIRST_MOVE_TIME_LIMIT : MOVE_TIME_LIMIT;
+	}
+
+	/**
+	 * Searches the given position for the time a turn allows.
+	 */
+	public Move chooseMove(PentagoBoardState boardState) {
+		return search(boardState, getTimeLimit(boardState));
+	}
+
+	/**
+	 * Performs a Monte Carlo Tree Search from the given position.
+	 * @param boardState is the position to search from. It is not modified.
+	 * @param timeLimit is the search time in milliseconds.
+	 * @return the most visited move at the root, or a winning move if one exists.
+	 */
+	public Move search(PentagoBoardState boardState, long timeLimit) {
+		long deadline = System.nanoTime() + timeLimit * 1000000;
+		stopPondering();
+		if (board == null || !board.snapshot().equals(boardState.snapshot())) {
+			resetTo(boardState); // The kept tree is not for this position
+		}
+		reusedVisits = tree.getVisits(SearchTree.ROOT);
+		int winningMove = MyTools.findWinningMove(boardState, winSquares);
+		if (winningMove >= 0) {
+			return boardState.toMove(winningMove);
+		}
+		worker.iterateUntil(deadline);
+		return board.toMove(tree.getMove(tree.mostVisitedChild(SearchTree.ROOT)));
+	}
+
+	/**
+	 * Follows a move of the game in the kept tree: the child it leads to becomes the root and the rest of the tree
+	 * is discarded. Moves to positions the tree does not hold start a fresh tree.
+	 * @param boardState is the position after the move.
+	 * @param move is the move, as received from the server.
+	 */
+	public void movePlayed(PentagoBoardState boardState, Move move) {
+		boolean wasPondering = stopPondering();
+		int predictedMove = wasPondering ? predictedMove() : -1;
+		if (board == null || board.gameOver() || !(move instanceof PentagoMove) || !board.isLegal((PentagoMove) move)) {
+			resetTo(boardState);
+			return;
+		}
+		int encoded = board.encode((PentagoMove) move);
+		board.getDistinctMoves(moves, representatives); // Children are stored under the representative of their position
+		int child = tree.findChild(SearchTree.ROOT, representatives[encoded]);
+		board.processMove(encoded);
+		if (wasPondering) {
+			ponderedMoves++;
+			if (representatives[encoded] == predictedMove) {
+				ponderHits++;
+			}
+		}
+		if (child < 0 || !board.snapshot().equals(boardState.snapshot())) {
+			resetTo(boardState);
+			return;
+		}
+		tree.reroot(child);
+	}
+
+	/**
+	 * Starts searching the current position on a background thread until the next move or search. Call it once our
+	 * move has been played, while the client waits for the opponent's reply.
+	 */
+	public void startPondering() {
+		stopPondering();
+		if (board == null || board.gameOver()) {
+			return;
+		}
+		isPonderingStopped = false;
+		ponderThread = new Thread(this::ponder, "ponder");
+		ponderThread.setDaemon(true); // Never keeps the client alive
+		ponderThread.start();
+	}
+
+	private void ponder() {
+		worker.expandRoot();
+		while (!isPonderingStopped) {
+			worker.iterate();
+		}
+	}
+
+	/**
+	 * Stops the pondering thread, if any, and waits for it to leave the tree.
+	 * @return True if the engine was pondering.
+	 */
+	public boolean stopPondering() {
+		if (ponderThread == null) {
+			return false;
+		}
+		isPonderingStopped = true;
+		boolean isInterrupted = false;
+		while (ponderThread.isAlive()) {
+			try {
+				ponderThread.join();
+			} catch (InterruptedException e) {
+				isInterrupted = true; // Keep waiting, the tree must not be shared
+			}
+		}
+		if (isInterrupted) {
+			Thread.currentThread().interrupt();
+		}
+		ponderThread = null;
+		return true;
+	}
+
+	/**
+	 * @return the most visited move at the root, as stored in the tree, or -1 if the root has no children.
+	 */
+	private int predictedMove() {
+		if (!tree.isExpanded(SearchTree.ROOT) || tree.getChildCount(SearchTree.ROOT) == 0) {
+			return -1;
+		}
+		return tree.getMove(tree.mostVisitedChild(SearchTree.ROOT));
+	}
+
+	/**
+	 * @return the number of opponent moves that arrived while pondering.
+	 */
+	public int getPonderedMoves() {
+		return ponderedMoves;
+	}
+
+	/**
+	 * @return the number of opponent moves that were the reply the pondering predicted.
+	 */
+	public int getPonderHits() {
+		return ponderHits;
+	}
+
+	/**
+	 * @return the fraction of pondered opponent moves that were ponder hits, or 0 if there were none.
+	 */
+	public double getPonderHitRate() {
+		return ponderedMoves == 0 ? 0 : (double) ponderHits / ponderedMoves;
+	}
+
+	/**
+	 * Discards the tree and starts again from the given position.
+	 */
+	private void resetTo(PentagoBoardState boardState) {
+		board = (PentagoBoardState) boardState.clone();
+		board.setRandom(random); // Not the stream of the given state, which other searches may be using
+		worker.setBoard(board);
+		tree.clear();
+	}
+
+	/**
+	 * Sets the random stream of the rollouts, so searches running side by side can be given independent ones.
+	 */
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
+		if (board != null) {
+			board.setRandom(random);
+		}
+	}
+
+	/**
+	 * Adds the visits and wins of each child of the root to the entries of its move.
+	 * @param visits is indexed by encoded move, see PentagoBoardState.getAllLegalMoves(int[]).
+	 * @param wins is indexed the same way and counts the games won by the player to move at the root.
+	 */
+	public void addRootStatistics(long[] visits, long[] wins) {
+		if (!tree.isExpanded(SearchTree.ROOT)) {
+			return;
+		}
+		int first = tree.getFirstChild(SearchTree.ROOT);
+		for (int child = first; child < first + tree.getChildCount(SearchTree.ROOT); child++) {
+			visits[tree.getMove(child)] += tree.getVisits(child);
+			wins[tree.getMove(child)] += tree.getWins(child);
+		}
+	}
+
+	/**
+	 * @return the number of visits the root already had when the last search started, from earlier turns.
+	 */
+	public int getReusedVisits() {
+		return reusedVisits;
+	}
+
+	/**
+	 * @return the number of iterations of the last search.
+	 */
+	public long getIterations() {
+		return worker.getIterations();
+	}
+
+	/**
+	 * @return the number of nodes in the tree of the last search.
+	 */
+	public int getNodeCount() {
+		return tree.size();
+	}
+}
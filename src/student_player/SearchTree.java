@@ -0,0 +1,226 @@
+package student_player;
+
+import java.util.Arrays;
+
+/**
+ * A Monte Carlo search tree stored as flat primitive arrays instead of Node objects: per node a visit count, a
+ * win count, the encoded move leading to it, the index of its first child and its number of children. The children
+ * of a node are allocated together, so they sit next to each other and UCT selection scans them sequentially.
+ * No board is stored; a search re-derives the position of a node by playing the moves along its path.
+ *
+ * At 16 bytes per node the arrays are split into pages that are allocated as the tree grows and kept across
+ * clear(), so a full tree never needs to be copied into a bigger one and tens of millions of nodes fit in the
+ * heap a client gets.
+ * @author Samuel Morris (dodobird)
+ */
+class SearchTree implements MonteCarloTree {
+
+	public static final int DEFAULT_MAX_NODES = 20 << 20; // About 320 MB, inside the 520 MB Autoplay gives a client
+	private static final int NOT_EXPANDED = -1;
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final int maxNodes;
+	private final int[][] visits;
+	private final int[][] wins; // Games won by the player who made the move leading to the node
+	private final short[][] moves; // Encoded move leading to the node, see PentagoBoardState.getAllLegalMoves(int[])
+	private final int[][] firstChild; // NOT_EXPANDED until the node's children are added
+	private final short[][] childCount;
+	private int size;
+	private long[] kept; // Scratch for reroot: one bit per node of the kept subtree, allocated on first use
+	private int[] keptBefore; // Scratch for reroot: number of kept nodes before each word of kept
+
+	public SearchTree(int maxNodes) {
+		this.maxNodes = maxNodes;
+		int numPages = (maxNodes + PAGE_SIZE - 1) >>> PAGE_BITS;
+		visits = new int[numPages][];
+		wins = new int[numPages][];
+		moves = new short[numPages][];
+		firstChild = new int[numPages][];
+		childCount = new short[numPages][];
+		clear();
+	}
+
+	/**
+	 * Removes every node but a fresh root, keeping the allocated pages for reuse.
+	 */
+	public void clear() {
+		size = 0;
+		allocate(1);
+		moves[0][0] = -1; // root contains null-move
+	}
+
+	/**
+	 * Makes a node the new root, keeping its subtree with all its statistics and discarding every other node.
+	 * A child is always allocated after its parent and the kept nodes keep their relative order, so each one moves
+	 * to an index no higher than its old one and the subtree is compacted in place, one node at a time, without
+	 * overwriting a node that has not been moved yet. Sibling blocks stay contiguous.
+	 */
+	public void reroot(int node) {
+		if (node == ROOT) {
+			return;
+		}
+		int numWords = (size + 63) >>> 6;
+		if (kept == null) {
+			kept = new long[(maxNodes + 63) >>> 6];
+			keptBefore = new int[kept.length];
+		}
+		Arrays.fill(kept, 0, numWords, 0L);
+
+		// Mark the subtree: descendants have higher indices than their ancestors, so one ascending pass finds them all
+		kept[node >>> 6] |= 1L << node;
+		for (int i = node; i < size; i++) {
+			if ((kept[i >>> 6] >>> i & 1L) == 0 || !isExpanded(i)) {
+				continue;
+			}
+			int first = getFirstChild(i);
+			for (int child = first; child < first + getChildCount(i); child++) {
+				kept[child >>> 6] |= 1L << child;
+			}
+		}
+		int count = 0;
+		for (int word = 0; word < numWords; word++) {
+			keptBefore[word] = count;
+			count += Long.bitCount(kept[word]);
+		}
+
+		// Move every kept node down to its rank among the kept nodes
+		for (int i = node; i < size; i++) {
+			if ((kept[i >>> 6] >>> i & 1L) == 0) {
+				continue;
+			}
+			int target = rank(i);
+			int first = getFirstChild(i);
+			int page = target >>> PAGE_BITS;
+			int index = target & PAGE_MASK;
+			visits[page][index] = getVisits(i);
+			wins[page][index] = getWins(i);
+			moves[page][index] = (short) getMove(i);
+			childCount[page][index] = (short) getChildCount(i);
+			firstChild[page][index] = first == NOT_EXPANDED ? NOT_EXPANDED : rank(first);
+		}
+		size = count;
+		moves[0][0] = -1; // root contains null-move
+	}
+
+	/**
+	 * @return the number of kept nodes before the given one, see reroot.
+	 */
+	private int rank(int node) {
+		return keptBefore[node >>> 6] + Long.bitCount(kept[node >>> 6] & ((1L << node) - 1));
+	}
+
+	/**
+	 * @return the child of an expanded node reached by the given move, or -1 if there is none.
+	 */
+	public int findChild(int node, int move) {
+		if (!isExpanded(node)) {
+			return -1;
+		}
+		int first = getFirstChild(node);
+		for (int child = first; child < first + getChildCount(node); child++) {
+			if (getMove(child) == move) {
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	@Override
+	public int getVisits(int node) {
+		return visits[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	@Override
+	public int getWins(int node) {
+		return wins[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	@Override
+	public int getMove(int node) {
+		return moves[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	@Override
+	public int getFirstChild(int node) {
+		return firstChild[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	@Override
+	public int getChildCount(int node) {
+		return childCount[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	@Override
+	public boolean isExpanded(int node) {
+		return getFirstChild(node) != NOT_EXPANDED;
+	}
+
+	@Override
+	public int update(int node, int games, int won) {
+		int previousVisits = visits[node >>> PAGE_BITS][node & PAGE_MASK];
+		visits[node >>> PAGE_BITS][node & PAGE_MASK] = previousVisits + games;
+		wins[node >>> PAGE_BITS][node & PAGE_MASK] += won;
+		return previousVisits;
+	}
+
+	/**
+	 * Adds one child per move to an unexpanded node.
+	 * @return False, leaving the node unexpanded, if the tree has no room for the children.
+	 */
+	@Override
+	public boolean expand(int node, int[] childMoves, int count) {
+		int first = allocate(count);
+		if (first < 0) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			int child = first + i;
+			moves[child >>> PAGE_BITS][child & PAGE_MASK] = (short) childMoves[i];
+		}
+		firstChild[node >>> PAGE_BITS][node & PAGE_MASK] = first;
+		childCount[node >>> PAGE_BITS][node & PAGE_MASK] = (short) count;
+		return true;
+	}
+
+	/**
+	 * Reserves count consecutive fresh nodes, allocating pages as needed.
+	 * @return the index of the first one, or -1 if the tree is full.
+	 */
+	private int allocate(int count) {
+		if (count > maxNodes - size) {
+			return -1;
+		}
+		int first = size;
+		size += count;
+		for (int page = first >>> PAGE_BITS; page <= (size - 1) >>> PAGE_BITS; page++) {
+			if (visits[page] == null) {
+				visits[page] = new int[PAGE_SIZE];
+				wins[page] = new int[PAGE_SIZE];
+				moves[page] = new short[PAGE_SIZE];
+				firstChild[page] = new int[PAGE_SIZE];
+				childCount[page] = new short[PAGE_SIZE];
+			}
+		}
+		for (int node = first; node < size; node++) {
+			int page = node >>> PAGE_BITS;
+			int index = node & PAGE_MASK;
+			visits[page][index] = 0;
+			wins[page][index] = 0;
+			firstChild[page][index] = NOT_EXPANDED;
+			childCount[page][index] = 0;
+		}
+		return first;
+	}
+}
@@ -0,0 +1,182 @@
+package student_player;
+
+import pentago_twist.PentagoBatchRollout;
+import pentago_twist.PentagoBoardState;
+
+/**
+ * The iterations of a Monte Carlo Tree Search on a MonteCarloTree, run by one thread. A single working board is
+ * walked down the selection path with processMove and back up with undoMove, so nodes hold nothing but their
+ * statistics. Expansion and rollouts follow MyTools.MonteCarloTreeSearch: one child per distinct position, moves
+ * that hand the opponent the game are pruned unless nothing else is left, and each leaf gets a batch of lockstep
+ * random games.
+ *
+ * Several workers can share a ConcurrentSearchTree. They are then given a virtual loss: a worker descending through
+ * a node counts that many of its pending games there as visits without wins until the results are in, so the UCB of
+ * the branch drops and the next worker tends to pick another one. A worker alone on its tree uses none.
+ * @author Samuel Morris (dodobird)
+ */
+class SearchWorker {
+
+	public static final int ROLLOUTS_PER_LEAF = 16;
+	private static final int ITERATIONS_PER_CLOCK_CHECK = 16;
+
+	private final MonteCarloTree tree;
+	private final int virtualLoss;
+	private final PentagoBatchRollout rollouts = new PentagoBatchRollout(ROLLOUTS_PER_LEAF);
+	private final int[] path = new int[PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE + 1]; // Nodes from the root
+	private final int[] moves = new int[PentagoBoardState.MAX_MOVES];
+	private final int[] losingMoves = new int[PentagoBoardState.MAX_MOVES];
+	private PentagoBoardState board; // Position at the root between iterations
+	private long iterations;
+
+	/**
+	 * @param virtualLoss is the number of pending games, at most ROLLOUTS_PER_LEAF, counted on the path of an
+	 *                    iteration until its results are in.
+	 */
+	public SearchWorker(MonteCarloTree tree, int virtualLoss) {
+		if (virtualLoss < 0 || virtualLoss > ROLLOUTS_PER_LEAF) {
+			throw new IllegalArgumentException("virtualLoss must be in [0, " + ROLLOUTS_PER_LEAF + "]: " + virtualLoss);
+		}
+		this.tree = tree;
+		this.virtualLoss = virtualLoss;
+	}
+
+	/**
+	 * @return the working board, at the position of the root between iterations.
+	 */
+	public PentagoBoardState getBoard() {
+		return board;
+	}
+
+	/**
+	 * Gives the worker the position at the root. The worker walks this board itself, so it must not be shared.
+	 */
+	public void setBoard(PentagoBoardState board) {
+		this.board = board;
+	}
+
+	/**
+	 * @return the number of iterations since the last call to iterateUntil.
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Expands the root if no worker has yet, then iterates until the deadline.
+	 * @param deadline is a System.nanoTime() value.
+	 */
+	public void iterateUntil(long deadline) {
+		iterations = 0;
+		expandRoot();
+		do {
+			for (int i = 0; i < ITERATIONS_PER_CLOCK_CHECK; i++) {
+				iterate();
+			}
+		} while (System.nanoTime() < deadline);
+	}
+
+	public void expandRoot() {
+		if (!tree.isExpanded(MonteCarloTree.ROOT)) {
+			expand(MonteCarloTree.ROOT);
+		}
+	}
+
+	/**
+	 * One selection, expansion, rollout and backpropagation, leaving the board at the root again.
+	 */
+	public void iterate() {
+		iterations++;
+		int node = MonteCarloTree.ROOT;
+		int depth = 0;
+		path[depth++] = node;
+		int previousVisits = addVirtualLoss(node);
+		while (tree.isExpanded(node) && tree.getChildCount(node) > 0) {
+			node = tree.selectByUCB(node);
+			board.processMove(tree.getMove(node));
+			path[depth++] = node;
+			previousVisits = addVirtualLoss(node);
+		}
+		// Expand a leaf that has been visited before, and continue to its first child. A leaf that another worker
+		// is expanding is played out as it is.
+		if (previousVisits > 0 && !board.gameOver() && expand(node)) {
+			node = tree.getFirstChild(node);
+			board.processMove(tree.getMove(node));
+			path[depth++] = node;
+			addVirtualLoss(node);
+		}
+
+		int mover = 1 - board.getTurnPlayer(); // The player who moved into the leaf
+		int moverWins;
+		int otherWins;
+		if (board.gameOver()) {
+			moverWins = board.getWinner() == mover ? ROLLOUTS_PER_LEAF : 0;
+			otherWins = board.getWinner() == 1 - mover ? ROLLOUTS_PER_LEAF : 0;
+		}
+		else {
+			moverWins = rollouts.run(board, ROLLOUTS_PER_LEAF, mover);
+			otherWins = rollouts.countWins(ROLLOUTS_PER_LEAF, 1 - mover);
+		}
+
+		// Credit each node on the path to the player who moved into it, in place of the virtual loss, undoing the
+		// moves on the way up
+		for (int i = depth - 1; i >= 0; i--) {
+			tree.update(path[i], ROLLOUTS_PER_LEAF - virtualLoss, moverWins);
+			if (i > 0) {
+				board.undoMove(tree.getMove(path[i]));
+			}
+			int swap = moverWins;
+			moverWins = otherWins;
+			otherWins = swap;
+		}
+	}
+
+	/**
+	 * @return the visits the node had before.
+	 */
+	private int addVirtualLoss(int node) {
+		return virtualLoss == 0 ? tree.getVisits(node) : tree.update(node, virtualLoss, 0);
+	}
+
+	/**
+	 * Adds the children of a node whose position is on the board.
+	 * @return False if the tree is full, or another worker is expanding the node.
+	 */
+	private boolean expand(int node) {
+		return tree.expand(node, moves, childMoves(board, moves, losingMoves));
+	}
+
+	/**
+	 * Lists the moves a node gets children for: one per distinct resulting position, without the moves that hand
+	 * the opponent the game now or on its next move unless nothing else is left.
+	 * @param moves receives the moves.
+	 * @param losingMoves is scratch of the same size.
+	 * @return the number of moves.
+	 */
+	static int childMoves(PentagoBoardState board, int[] moves, int[] losingMoves) {
+		int numMoves = board.getDistinctMoves(moves, null); // one child per distinct resulting position
+		int opponent = 1 - board.getTurnPlayer();
+		int numSafe = 0;
+		int numLosing = 0;
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			board.processMove(move);
+			// Prune moves that hand the opponent the game now or on its next move
+			boolean isLosing = board.getWinner() == opponent
+					|| (!board.gameOver() && board.getThreatSquares(opponent) != 0);
+			board.undoMove(move);
+			if (isLosing) {
+				losingMoves[numLosing++] = move;
+			}
+			else {
+				moves[numSafe++] = move;
+			}
+		}
+		// Keep the losing moves if there is nothing else to play
+		if (numSafe == 0) {
+			System.arraycopy(losingMoves, 0, moves, 0, numLosing);
+			return numLosing;
+		}
+		return numSafe;
+	}
+}
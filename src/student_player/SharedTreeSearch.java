@@ -0,0 +1,245 @@
+package student_player;
+
+import boardgame.Move;
+import pentago_twist.PentagoBoardState;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tree-parallel Monte Carlo Tree Search: one SearchWorker per thread runs the iterations of SearchEngine on a single
+ * shared ConcurrentSearchTree. Each worker walks its own copy of the board and plays its own rollouts from its own
+ * random stream; the tree is the only thing they share. Every pending rollout batch counts as a virtual loss of all
+ * its games, which spreads the workers over the branches, see SearchWorker.
+ *
+ * The tree is cleared at every search, so unlike SearchEngine nothing is kept between turns.
+ * @author Samuel Morris (dodobird)
+ */
+public class SharedTreeSearch extends ParallelSearch {
+
+	private static final int VIRTUAL_LOSS = SearchWorker.ROLLOUTS_PER_LEAF; // The pending batch counts as lost until its results are in
+
+	private final ConcurrentSearchTree tree;
+	private final SearchWorker[] workers;
+	private final SplittableRandom[] randoms; // The rollout stream of each worker
+	private final long[] winSquares = new long[PentagoBoardState.NUM_TWISTS]; // Scratch for MyTools.findWinningMove
+
+	public SharedTreeSearch(int threads) {
+		this(threads, SearchTree.DEFAULT_MAX_NODES, new SplittableRandom());
+	}
+
+	/**
+	 * @param threads is the number of threads searching the tree.
+	 * @param maxNodes is the size limit of the tree.
+	 * @param random is split into the random streams of the threads.
+	 */
+	public SharedTreeSearch(int threads, int maxNodes, SplittableRandom random) {
+		super(threads);
+		tree = new ConcurrentSearchTree(maxNodes);
+		workers = new SearchWorker[threads];
+		randoms = new SplittableRandom[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new SearchWorker(tree, VIRTUAL_LOSS);
+			randoms[i] = random.split();
+		}
+	}
+
+	/**
+	 * Searches the given position with every thread on a fresh tree.
+	 * @param boardState is the position to search from. It is not modified.
+	 * @param timeLimit is the search time in milliseconds.
+	 * @return the most visited move at the root, or a winning move if one exists.
+	 */
+	@Override
+	public Move search(PentagoBoardState boardState, long timeLimit) {
+		long deadline = System.nanoTime() + timeLimit * 1000000;
+		int winningMove = MyTools.findWinningMove(boardState, winSquares);
+		if (winningMove >= 0) {
+			return boardState.toMove(winningMove);
+		}
+		tree.clear();
+		for (int i = 0; i < workers.length; i++) {
+			PentagoBoardState board = (PentagoBoardState) boardState.clone();
+			board.setRandom(randoms[i]);
+			workers[i].setBoard(board);
+		}
+		workers[0].expandRoot(); // Before the threads start, so none of them plays out the root unexpanded
+		runOnEveryThread(i -> workers[i].iterateUntil(deadline));
+		return boardState.toMove(tree.getMove(tree.mostVisitedChild(MonteCarloTree.ROOT)));
+	}
+
+	@Override
+	public long getIterations() {
+		long count = 0;
+		for (SearchWorker worker : workers) {
+			count += worker.getIterations();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of nodes in the tree of the last search.
+	 */
+	public int getNodeCount() {
+		return tree.size();
+	}
+
+	/**
+	 * Checks the tree left by the last search from the given position, once every thread has finished:
+	 * - no visits or wins were lost: the root has SearchWorker.ROLLOUTS_PER_LEAF visits per iteration and every virtual loss is gone,
+	 *   so a node's visits are its children's plus a whole number of batches played from the node itself;
+	 * - every node was expanded exactly once: each node but the root is the child of exactly one node, the tree has
+	 *   no other nodes, and the children of each node are the moves SearchWorker.childMoves gives for its position.
+	 * @return a description of the first problem found, or null if there is none.
+	 */
+	String checkTree(PentagoBoardState boardState) {
+		long expectedRootVisits = getIterations() * SearchWorker.ROLLOUTS_PER_LEAF;
+		if (tree.getVisits(MonteCarloTree.ROOT) != expectedRootVisits) {
+			return "root has " + tree.getVisits(MonteCarloTree.ROOT) + " visits, expected " + expectedRootVisits;
+		}
+		String problem = tree.checkStructure();
+		if (problem != null) {
+			return problem;
+		}
+		return checkNode(MonteCarloTree.ROOT, (PentagoBoardState) boardState.clone(),
+				new int[PentagoBoardState.MAX_MOVES], new int[PentagoBoardState.MAX_MOVES]);
+	}
+
+	private String checkNode(int node, PentagoBoardState board, int[] moves, int[] losingMoves) {
+		if (!tree.isExpanded(node)) {
+			return null;
+		}
+		int first = tree.getFirstChild(node);
+		int count = tree.getChildCount(node);
+		int numMoves = SearchWorker.childMoves(board, moves, losingMoves);
+		if (numMoves != count) {
+			return "node " + node + " has " + count + " children, expected " + numMoves;
+		}
+		long childVisits = 0;
+		for (int i = 0; i < count; i++) {
+			int child = first + i;
+			if (tree.getMove(child) != moves[i]) {
+				return "child " + i + " of node " + node + " has move " + tree.getMove(child) + ", expected " + moves[i];
+			}
+			childVisits += tree.getVisits(child);
+		}
+		long ownVisits = tree.getVisits(node) - childVisits;
+		if (ownVisits < 0 || ownVisits % SearchWorker.ROLLOUTS_PER_LEAF != 0) {
+			return "node " + node + " has " + tree.getVisits(node) + " visits but its children have " + childVisits;
+		}
+		String problem = null;
+		for (int i = 0; i < count && problem == null; i++) {
+			int move = tree.getMove(first + i);
+			board.processMove(move);
+			problem = checkNode(first + i, board, moves, losingMoves);
+			board.undoMove(move);
+		}
+		return problem;
+	}
+
+	/**
+	 * Has the given number of threads race down one chain of nodes until a small tree is full: each walk follows
+	 * first children from the root to a leaf, tries to expand it with two children and adds a visit and a win to every
+	 * node on its path. Virtual loss keeps the threads of a search apart, so this is where they meet most.
+	 * @return a description of the first problem found, or null if there is none.
+	 */
+	static String checkContendedExpansion(int threads) {
+		ConcurrentSearchTree tree = new ConcurrentSearchTree(1 << 12); // A chain, so walks get as long as the tree is big
+		AtomicLong walks = new AtomicLong();
+		Thread[] racers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			racers[t] = new Thread(() -> {
+				int[] children = { 1, 2 };
+				int[] path = new int[tree.getMaxNodes()];
+				boolean isFull = false;
+				while (!isFull) {
+					int depth = 0;
+					int node = MonteCarloTree.ROOT;
+					path[depth++] = node;
+					while (tree.isExpanded(node)) {
+						node = tree.getFirstChild(node);
+						path[depth++] = node;
+					}
+					isFull = !tree.expand(node, children, children.length)
+							&& tree.size() + children.length > tree.getMaxNodes();
+					for (int i = 0; i < depth; i++) {
+						tree.update(path[i], 1, 1);
+					}
+					walks.incrementAndGet();
+				}
+			}, "racer");
+			racers[t].start();
+		}
+		for (Thread racer : racers) {
+			try {
+				racer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return "interrupted";
+			}
+		}
+		String problem = tree.checkStructure();
+		if (problem == null && tree.getVisits(MonteCarloTree.ROOT) != walks.get()) {
+			problem = "root has " + tree.getVisits(MonteCarloTree.ROOT) + " visits after " + walks.get() + " walks";
+		}
+		for (int node = 0; node < tree.size() && problem == null; node++) {
+			if (tree.getWins(node) != tree.getVisits(node)) {
+				problem = "node " + node + " has " + tree.getVisits(node) + " visits but " + tree.getWins(node) + " wins";
+			}
+		}
+		return problem;
+	}
+
+	/**
+	 * Stress test and scaling benchmark, see ParallelSearch.benchmark.
+	 * Usage: java student_player.SharedTreeSearch [-t maxThreads] [-l timeLimit] [-s rounds]
+	 *   '-t maxThreads' searches with 1, 2, 4, ... threads up to this many (default one per processor).
+	 *   '-l timeLimit' sets the milliseconds per search (default MOVE_TIME_LIMIT).
+	 *   '-s rounds' instead has maxThreads threads race to expand the same nodes, and then runs that many searches
+	 *     with them on a small tree and random positions, checking the tree after each one, see checkTree.
+	 */
+	public static void main(String[] args) {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		long timeLimit = SearchEngine.MOVE_TIME_LIMIT;
+		int stressRounds = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t")) {
+				maxThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-l")) {
+				timeLimit = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-s")) {
+				stressRounds = Integer.parseInt(args[++i]);
+			} else {
+				System.err.println("Usage: java student_player.SharedTreeSearch [-t maxThreads] [-l timeLimit] [-s rounds]");
+				return;
+			}
+		}
+		SplittableRandom random = new SplittableRandom(1);
+
+		if (stressRounds > 0) {
+			String contention = checkContendedExpansion(maxThreads);
+			System.out.println("contended expansion: " + (contention == null ? "OK" : contention));
+			if (contention != null) {
+				System.exit(1);
+			}
+			// A small tree fills up quickly, so the searches also run into a full tree
+			SharedTreeSearch search = new SharedTreeSearch(maxThreads, 1 << 16, random.split());
+			for (int round = 0; round < stressRounds; round++) {
+				PentagoBoardState position = randomPosition(random.split(), random.nextInt(16));
+				search.search(position, timeLimit);
+				String problem = search.checkTree(position);
+				System.out.println(String.format("round %d: %d iterations, %d nodes: %s", round,
+						search.getIterations(), search.getNodeCount(), problem == null ? "OK" : problem));
+				if (problem != null) {
+					search.shutdown();
+					System.exit(1);
+				}
+			}
+			search.shutdown();
+			return;
+		}
+
+		benchmark(threads -> new SharedTreeSearch(threads, SearchTree.DEFAULT_MAX_NODES, new SplittableRandom(threads)),
+				maxThreads, timeLimit);
+	}
+}
@@ -1,5 +1,6 @@
 package student_player;
 
+import boardgame.BoardState;
 import boardgame.Move;
 
 import pentago_twist.PentagoPlayer;
@@ -12,6 +13,8 @@ import pentago_twist.PentagoBoardState;
  */
 public class StudentPlayer extends PentagoPlayer {
 
+	private final RootParallelSearch engine = new RootParallelSearch(); // One search per processor, see THREADS_PROPERTY
+
 	/**
 	 * NOTE: Cannot change this function at all.
 	 */
@@ -25,6 +28,26 @@ public class StudentPlayer extends PentagoPlayer {
      * make decisions.
      */
     public Move chooseMove(PentagoBoardState boardState) {
-        return MyTools.MonteCarloTreeSearch(boardState, false);
+        return engine.chooseMove(boardState);
+    }
+
+    /**
+     * Keeps the search tree of the engine in step with the game, so each search starts from the last one's tree,
+     * and ponders on the opponent's time once our move has been played.
+     */
+    @Override
+    public void movePlayed(BoardState boardState, Move move) {
+        engine.movePlayed((PentagoBoardState) boardState, move);
+        if (!boardState.gameOver() && boardState.getTurnPlayer() != getColor()) {
+            engine.startPondering();
+        }
+    }
+
+    /**
+     * Stops the search threads of the engine, pondering included.
+     */
+    @Override
+    public void gameOver(String msg, BoardState boardState) {
+        engine.shutdown();
     }
 }
\ No newline at end of file